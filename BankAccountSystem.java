@@ -1,9 +1,63 @@
 package com.elevate.task5;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Complete Bank Account Simulation
@@ -11,30 +65,540 @@ import java.util.Scanner;
  */
 public class BankAccountSystem {
     
+    /**
+     * Outcome of a balance operation - lets callers report errors without console I/O
+     */
+    enum Result { OK, INVALID_AMOUNT, INSUFFICIENT_FUNDS, ACCOUNT_NOT_FOUND, SAME_ACCOUNT, ACCOUNT_EXISTS, INVALID_NAME }
+    
+    /**
+     * Money helpers - amounts are stored as long cents so arithmetic is
+     * exact and never drifts the way repeated double addition does
+     */
+    static final class Money {
+        private Money() {}
+        
+        /**
+         * Convert a console/dollar amount to cents, rounding to the nearest cent
+         * @return cents, or -1 for NaN, infinite or out-of-range input
+         */
+        static long toCents(double dollars) {
+            if (Double.isNaN(dollars) || Double.isInfinite(dollars)
+                    || Math.abs(dollars) >= Long.MAX_VALUE / 100.0) {
+                return -1;
+            }
+            return Math.round(dollars * 100);
+        }
+        
+        /**
+         * Format cents as dollars with exactly two decimals, e.g. 123456 -> "1234.56"
+         */
+        static String format(long cents) {
+            StringBuilder sb = new StringBuilder(24);
+            if (cents < 0) {
+                sb.append('-');
+            }
+            long abs = Math.abs(cents);
+            long fraction = abs % 100;
+            sb.append(abs / 100).append('.');
+            if (fraction < 10) {
+                sb.append('0');
+            }
+            return sb.append(fraction).toString();
+        }
+        
+        /**
+         * Parse a non-negative dollar amount such as "12", "12.3" or "12.34"
+         * straight into cents, without going through double
+         * @return cents, or -1 if the text is not a valid amount
+         */
+        static long parseCents(String text, int start, int end) {
+            long dollars = 0;
+            int i = start;
+            while (i < end && text.charAt(i) != '.') {
+                int digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || dollars > (Long.MAX_VALUE / 100 - digit) / 10) {
+                    return -1;
+                }
+                dollars = dollars * 10 + digit;
+                i++;
+            }
+            if (i == start) {
+                return -1;
+            }
+            long cents = 0;
+            int fractionDigits = end - i - 1;
+            if (i < end) {
+                if (fractionDigits < 1 || fractionDigits > 2) {
+                    return -1;
+                }
+                for (int j = i + 1; j < end; j++) {
+                    int digit = text.charAt(j) - '0';
+                    if (digit < 0 || digit > 9) {
+                        return -1;
+                    }
+                    cents = cents * 10 + digit;
+                }
+                if (fractionDigits == 1) {
+                    cents *= 10;
+                }
+            }
+            return dollars * 100 + cents;
+        }
+    }
+    
+    /**
+     * Kinds of entries in an account's transaction log
+     */
+    enum TxType {
+        // New kinds go at the end: the ordinal is what the journal stores
+        CREATED("ACCOUNT CREATED"), DEPOSIT("DEPOSIT"), WITHDRAWAL("WITHDRAWAL"),
+        TRANSFER_IN("TRANSFER IN"), TRANSFER_OUT("TRANSFER OUT"), INTEREST("INTEREST"), FEE("FEE");
+        
+        private static final TxType[] VALUES = values();
+        private final String label;
+        
+        TxType(String label) {
+            this.label = label;
+        }
+        
+        static TxType of(byte code) {
+            return VALUES[code];
+        }
+        
+        static int count() {
+            return VALUES.length;
+        }
+        
+        byte code() {
+            return (byte) ordinal();
+        }
+        
+        boolean isDebit() {
+            return this == WITHDRAWAL || this == TRANSFER_OUT || this == FEE;
+        }
+    }
+    
+    /**
+     * Compact, event-sourced transaction log - one entry is a timestamp, a type
+     * byte and an amount, kept in parallel primitive arrays (17 bytes per
+     * entry instead of a formatted String). Text is only built when displayed.
+     * The entries are the source of truth for the balance: append() returns
+     * the new running total, and every CHECKPOINT_EVERY entries the total is
+     * saved, so the balance after any entry costs one checkpoint lookup plus
+     * a replay of fewer than CHECKPOINT_EVERY entries.
+     * Timestamps never decrease, so the timestamp array doubles as a time
+     * index that binary search can use.
+     * Not thread-safe on its own; Account guards it with its lock.
+     */
+    static final class TransactionLog {
+        private static final int INITIAL_CAPACITY = 8;
+        static final int CHECKPOINT_EVERY = 64;
+        
+        private long[] timestamps;
+        private byte[] types;
+        private long[] amounts;
+        private long[] checkpoints;     // checkpoints[k] = balance before entry k * CHECKPOINT_EVERY
+        private long balance;           // running total of every entry
+        private int size;
+        
+        TransactionLog() {
+            this(new long[INITIAL_CAPACITY], new byte[INITIAL_CAPACITY], new long[INITIAL_CAPACITY], new long[1], 0, 0);
+        }
+        
+        private TransactionLog(long[] timestamps, byte[] types, long[] amounts, long[] checkpoints, long balance, int size) {
+            this.timestamps = timestamps;
+            this.types = types;
+            this.amounts = amounts;
+            this.checkpoints = checkpoints;
+            this.balance = balance;
+            this.size = size;
+        }
+        
+        /**
+         * Append an entry - allocation-free except when the arrays grow.
+         * A clock that steps backwards is clamped to the previous entry's time.
+         * @return the balance after this entry
+         */
+        long append(long timestamp, TxType type, long amount) {
+            if (size > 0 && timestamp < timestamps[size - 1]) {
+                timestamp = timestamps[size - 1];
+            }
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                types = Arrays.copyOf(types, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+            }
+            if (size % CHECKPOINT_EVERY == 0) {
+                int checkpoint = size / CHECKPOINT_EVERY;
+                if (checkpoint == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, checkpoint * 2);
+                }
+                checkpoints[checkpoint] = balance;
+            }
+            timestamps[size] = timestamp;
+            types[size] = type.code();
+            amounts[size] = amount;
+            size++;
+            balance += delta(size - 1);
+            return balance;
+        }
+        
+        int size() { return size; }
+        boolean isEmpty() { return size == 0; }
+        long timestamp(int i) { return timestamps[i]; }
+        TxType type(int i) { return TxType.of(types[i]); }
+        long amount(int i) { return amounts[i]; }
+        long balance() { return balance; }
+        
+        private long delta(int i) {
+            return TxType.of(types[i]).isDebit() ? -amounts[i] : amounts[i];
+        }
+        
+        /**
+         * Balance right after entry i: nearest checkpoint plus a short replay
+         */
+        long balanceAfter(int i) {
+            int checkpoint = i / CHECKPOINT_EVERY;
+            long total = checkpoints[checkpoint];
+            for (int j = checkpoint * CHECKPOINT_EVERY; j <= i; j++) {
+                total += delta(j);
+            }
+            return total;
+        }
+        
+        /**
+         * Balance as of timeMillis (entries stamped at or before it), 0 before the first entry
+         */
+        long balanceAt(long timeMillis) {
+            int last = (timeMillis == Long.MAX_VALUE ? size : firstAtOrAfter(timeMillis + 1)) - 1;
+            return last < 0 ? 0 : balanceAfter(last);
+        }
+        
+        /**
+         * Full replay of every entry, checking each checkpoint on the way
+         * @return true if the checkpoints and the running balance all match the replay
+         */
+        boolean verify() {
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                if (i % CHECKPOINT_EVERY == 0 && checkpoints[i / CHECKPOINT_EVERY] != total) {
+                    return false;
+                }
+                total += delta(i);
+            }
+            return total == balance;
+        }
+        
+        /**
+         * Index of the first entry at or after timestamp (size if none) - O(log n)
+         */
+        int firstAtOrAfter(long timestamp) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid] < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        /**
+         * Read-only view of the entries appended so far, for writing out
+         * after the owner's lock is released. Appended entries never change
+         * and growing copies into new arrays, so the view stays intact while
+         * the live log keeps appending. Never append to the view.
+         */
+        TransactionLog view() {
+            return new TransactionLog(timestamps, types, amounts, checkpoints, balance, size);
+        }
+        
+        /**
+         * Write entries from onwards, 17 bytes each
+         */
+        void writeEntries(DataOutput out, int from) throws IOException {
+            for (int i = from; i < size; i++) {
+                out.writeLong(timestamps[i]);
+                out.writeByte(types[i]);
+                out.writeLong(amounts[i]);
+            }
+        }
+        
+        /**
+         * Append count entries written by writeEntries
+         */
+        void readEntries(DataInput in, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                long timestamp = in.readLong();
+                byte type = in.readByte();
+                long amount = in.readLong();
+                if (type < 0 || type >= TxType.count()) {
+                    throw new IOException("Bad transaction type " + type);
+                }
+                append(timestamp, TxType.of(type), amount);
+            }
+        }
+        
+        /**
+         * Render one entry in the same text format the history has always used
+         */
+        String format(int i) {
+            TxType type = type(i);
+            if (type == TxType.CREATED) {
+                return "ACCOUNT CREATED - Initial deposit: $" + Money.format(amounts[i]);
+            }
+            return new Date(timestamps[i]) + " - " + type.label + ": $" + Money.format(amounts[i])
+                   + " - New Balance: $" + Money.format(balanceAfter(i));
+        }
+    }
+    
+    /**
+     * One history entry, materialized only when a caller asks for a page
+     */
+    static final class Transaction {
+        final int sequence;         // 1-based position in the account's history
+        final long timestamp;
+        final TxType type;
+        final long amount;
+        final long balanceAfter;
+        private final String text;
+        
+        Transaction(TransactionLog log, int index) {
+            this.sequence = index + 1;
+            this.timestamp = log.timestamp(index);
+            this.type = log.type(index);
+            this.amount = log.amount(index);
+            this.balanceAfter = log.balanceAfter(index);
+            this.text = log.format(index);
+        }
+        
+        @Override
+        public String toString() {
+            return sequence + ". " + text;
+        }
+    }
+    
+    /**
+     * A page of history in chronological order, plus the cursor for the
+     * page of older entries before it (NO_MORE when this is the oldest page)
+     */
+    static final class HistoryPage {
+        static final int NO_MORE = -1;
+        
+        final List<Transaction> entries;
+        final int nextCursor;
+        
+        HistoryPage(List<Transaction> entries, int nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+        
+        boolean hasMore() {
+            return nextCursor != NO_MORE;
+        }
+    }
+    
+    /**
+     * Told about every balance change, while the account's lock is held
+     */
+    interface BalanceListener {
+        void balanceChanged(Account account, long oldBalance, long newBalance);
+    }
+    
     /**
      * Account class represents a single bank account
      * Demonstrates: Encapsulation, Methods, Constructors
+     * Thread-safe: every balance change holds this account's own lock, so
+     * tellers working on different accounts never block each other
      */
     static class Account {
         // Private variables - Encapsulation
-        private String accountNumber;
-        private String accountHolder;
-        private double balance;
-        private ArrayList<String> transactionHistory;
+        private final String accountNumber;
+        private final String accountHolder;
+        private volatile long balance;     // cents; cache of transactionHistory.balance() for lock-free reads
+        private final TransactionLog transactionHistory;
+        private final byte[] accountKey;   // UTF-8 account number, cached so journaling allocates nothing
+        private Journal journal;           // null when the bank runs in memory only
+        private long lastLsn = -1;         // journal position of the last change applied to this account
+        private BalanceListener listener;  // keeps the bank's balance index current; may be null
+        private long indexOrder;           // breaks balance ties in the bank's balance index
+        private int persistedEntries;      // leading history entries already in the bank's history file
+        
+        static final int LATEST = Integer.MAX_VALUE;   // history cursor for the newest page
         
         /**
          * Constructor - initializes the account object
          */
-        public Account(String accountNumber, String accountHolder, double initialBalance) {
-            this.accountNumber = accountNumber;
-            this.accountHolder = accountHolder;
-            this.balance = initialBalance;
-            this.transactionHistory = new ArrayList<>();
+        public Account(String accountNumber, String accountHolder, long initialBalance) {
+            this(accountNumber, accountHolder, initialBalance, System.currentTimeMillis());
+        }
+        
+        Account(String accountNumber, String accountHolder, long initialBalance, long createdAt) {
+            this(accountNumber, accountHolder, new TransactionLog());
             
             // Record initial transaction
-            String initialTransaction = String.format("ACCOUNT CREATED - Initial deposit: $%.2f", initialBalance);
-            transactionHistory.add(initialTransaction);
-            System.out.println("✓ Account created successfully for " + accountHolder);
+            this.balance = transactionHistory.append(createdAt, TxType.CREATED, initialBalance);
+        }
+        
+        /**
+         * Rebuild an account around the history read back from the history file
+         */
+        Account(String accountNumber, String accountHolder, TransactionLog history) {
+            this.accountNumber = accountNumber;
+            this.accountHolder = accountHolder;
+            this.transactionHistory = history;
+            this.accountKey = accountNumber.getBytes(StandardCharsets.UTF_8);
+            this.balance = history.balance();
+        }
+        
+        /**
+         * Write the CREATED record once the account is visible in the bank.
+         * Caller holds this account's lock, so no deposit can be journaled first.
+         */
+        void journalCreated(Journal journal) {
+            this.journal = journal;
+            if (journal != null) {
+                lastLsn = journal.append(TxType.CREATED, transactionHistory.timestamp(0), accountKey,
+                                         accountHolder.getBytes(StandardCharsets.UTF_8), balance);
+            }
+        }
+        
+        /**
+         * Re-apply a journaled change during recovery; records already covered
+         * by the snapshot (lsn at or below lastLsn) are skipped
+         */
+        synchronized void replay(long lsn, TxType type, long timestamp, long cents) {
+            if (lsn <= lastLsn) {
+                return;
+            }
+            long before = balance;
+            balance = transactionHistory.append(timestamp, type, cents);
+            balanceChanged(before);
+            lastLsn = lsn;
+        }
+        
+        /**
+         * Credit method - adds money without any console output
+         * @param cents amount to deposit, in cents
+         * @return OK, or INVALID_AMOUNT if amount is not positive or would overflow
+         */
+        public synchronized Result credit(long cents) {
+            if (cents <= 0 || cents > Long.MAX_VALUE - balance) {
+                return Result.INVALID_AMOUNT;
+            }
+            post(TxType.DEPOSIT, System.currentTimeMillis(), cents);
+            return Result.OK;
+        }
+        
+        /**
+         * Debit method - removes money without any console output
+         * Check and update happen under the same lock, so concurrent
+         * withdrawals can never overdraw the account
+         * @param cents amount to withdraw, in cents
+         * @return OK, INVALID_AMOUNT or INSUFFICIENT_FUNDS
+         */
+        public synchronized Result debit(long cents) {
+            if (cents <= 0) {
+                return Result.INVALID_AMOUNT;
+            }
+            if (cents > balance) {
+                return Result.INSUFFICIENT_FUNDS;
+            }
+            post(TxType.WITHDRAWAL, System.currentTimeMillis(), cents);
+            return Result.OK;
+        }
+        
+        /**
+         * Apply one day's interest and then any low-balance fee. Holds this
+         * account's lock for just those two entries, so accrual interleaves
+         * with live deposits and withdrawals instead of stopping them.
+         */
+        synchronized void accrue(AccrualPolicy policy, long now, AccrualReport report) {
+            long before = balance;
+            long interest = policy.interestOn(balance);
+            if (interest > 0 && interest <= Long.MAX_VALUE - balance) {
+                apply(TxType.INTEREST, now, interest);
+                report.interest.add(interest);
+            }
+            long fee = policy.feeOn(balance);
+            if (fee > 0) {
+                apply(TxType.FEE, now, fee);
+                report.fees.add(fee);
+                report.feeAccounts.increment();
+            }
+            if (balance != before) {
+                balanceChanged(before);   // one index update for both entries
+            }
+            report.accounts.increment();
+        }
+        
+        /**
+         * Journal and apply a single-account entry; caller holds the lock and
+         * has already validated the amount
+         */
+        private void post(TxType type, long now, long cents) {
+            long before = balance;
+            apply(type, now, cents);
+            balanceChanged(before);
+        }
+        
+        private void apply(TxType type, long now, long cents) {
+            if (journal != null) {
+                // Log before applying - a snapshot reading this account then sees both or neither
+                lastLsn = journal.append(type, now, accountKey, null, cents);
+            }
+            balance = transactionHistory.append(now, type, cents);
+        }
+        
+        /**
+         * Move money between two accounts atomically (no console output).
+         * Both locks are taken in account-number order, so two opposite
+         * transfers can never deadlock; a single journal record covers both sides.
+         * @return OK, INVALID_AMOUNT, INSUFFICIENT_FUNDS or SAME_ACCOUNT
+         */
+        static Result transfer(Account from, Account to, long cents) {
+            if (from == to) {
+                return Result.SAME_ACCOUNT;
+            }
+            Account first = from.accountNumber.compareTo(to.accountNumber) < 0 ? from : to;
+            Account second = (first == from) ? to : from;
+            synchronized (first) {
+                synchronized (second) {
+                    return from.transferLocked(to, cents);
+                }
+            }
+        }
+        
+        private Result transferLocked(Account to, long cents) {
+            if (cents <= 0 || cents > Long.MAX_VALUE - to.balance) {
+                return Result.INVALID_AMOUNT;
+            }
+            if (cents > balance) {
+                return Result.INSUFFICIENT_FUNDS;
+            }
+            long now = System.currentTimeMillis();
+            if (journal != null) {
+                long lsn = journal.append(TxType.TRANSFER_OUT, now, accountKey, to.accountKey, cents);
+                lastLsn = lsn;
+                to.lastLsn = lsn;
+            }
+            long before = balance;
+            balance = transactionHistory.append(now, TxType.TRANSFER_OUT, cents);
+            balanceChanged(before);
+            long toBefore = to.balance;
+            to.balance = to.transactionHistory.append(now, TxType.TRANSFER_IN, cents);
+            to.balanceChanged(toBefore);
+            return Result.OK;
+        }
+        
+        private void balanceChanged(long before) {
+            if (listener != null) {
+                listener.balanceChanged(this, before, balance);
+            }
         }
         
         /**
@@ -43,12 +607,8 @@ public class BankAccountSystem {
          * @return true if successful
          */
         public boolean deposit(double amount) {
-            if (amount > 0) {
-                balance += amount;
-                String transaction = String.format("%s - DEPOSIT: $%.2f - New Balance: $%.2f", 
-                                                  new Date(), amount, balance);
-                transactionHistory.add(transaction);
-                System.out.println("✓ Deposit successful! New balance: $" + balance);
+            if (credit(Money.toCents(amount)) == Result.OK) {
+                System.out.println("✓ Deposit successful! New balance: $" + Money.format(balance));
                 return true;
             }
             System.out.println("✗ Error: Deposit amount must be positive!");
@@ -61,20 +621,16 @@ public class BankAccountSystem {
          * @return true if successful
          */
         public boolean withdraw(double amount) {
-            if (amount <= 0) {
+            Result result = debit(Money.toCents(amount));
+            if (result == Result.INVALID_AMOUNT) {
                 System.out.println("✗ Error: Withdrawal amount must be positive!");
                 return false;
             }
-            if (amount > balance) {
-                System.out.println("✗ Error: Insufficient funds! Available: $" + balance);
+            if (result == Result.INSUFFICIENT_FUNDS) {
+                System.out.println("✗ Error: Insufficient funds! Available: $" + Money.format(balance));
                 return false;
             }
-            
-            balance -= amount;
-            String transaction = String.format("%s - WITHDRAWAL: $%.2f - New Balance: $%.2f", 
-                                              new Date(), amount, balance);
-            transactionHistory.add(transaction);
-            System.out.println("✓ Withdrawal successful! New balance: $" + balance);
+            System.out.println("✓ Withdrawal successful! New balance: $" + Money.format(balance));
             return true;
         }
         
@@ -82,6 +638,10 @@ public class BankAccountSystem {
          * Getter methods - provide controlled access to private data
          */
         public double getBalance() {
+            return balance / 100.0;
+        }
+        
+        public long getBalanceCents() {
             return balance;
         }
         
@@ -93,21 +653,91 @@ public class BankAccountSystem {
             return accountHolder;
         }
         
+        /**
+         * Most recent entries first page - pass its nextCursor to history(...) for older ones
+         */
+        public HistoryPage latestHistory(int pageSize) {
+            return history(Long.MIN_VALUE, Long.MAX_VALUE, LATEST, pageSize);
+        }
+        
+        /**
+         * Page backwards through the entries with fromMillis <= timestamp < toMillis.
+         * The time bounds are found by binary search, so the cost depends on
+         * the page size, not on how long the history is.
+         * @param cursor LATEST for the newest page, else a previous page's nextCursor
+         */
+        public synchronized HistoryPage history(long fromMillis, long toMillis, int cursor, int pageSize) {
+            int first = transactionHistory.firstAtOrAfter(fromMillis);
+            int end = Math.min(transactionHistory.firstAtOrAfter(toMillis), cursor);
+            int start = Math.max(first, end - Math.max(pageSize, 1));
+            List<Transaction> entries = new ArrayList<>(Math.max(end - start, 0));
+            for (int i = start; i < end; i++) {
+                entries.add(new Transaction(transactionHistory, i));
+            }
+            return new HistoryPage(entries, start > first ? start : HistoryPage.NO_MORE);
+        }
+        
+        /**
+         * Balance as it stood at timeMillis, in cents (0 before the account existed).
+         * Costs a binary search plus a replay of at most one checkpoint interval.
+         */
+        public synchronized long balanceAt(long timeMillis) {
+            return transactionHistory.balanceAt(timeMillis);
+        }
+        
+        /**
+         * Audit the balance against a full replay of the transaction log
+         * @return true if the stored balance is exactly what the transactions add up to
+         */
+        public synchronized boolean audit() {
+            return transactionHistory.verify() && transactionHistory.balance() == balance;
+        }
+        
+        /**
+         * The history as it stands now, safe to read without this account's lock
+         */
+        synchronized TransactionLog historyView() {
+            return transactionHistory.view();
+        }
+        
+        /**
+         * Display one page of transaction history
+         * @return the cursor for the next (older) page, or HistoryPage.NO_MORE
+         */
+        public int displayTransactionHistory(int cursor, int pageSize) {
+            HistoryPage page = history(Long.MIN_VALUE, Long.MAX_VALUE, cursor, pageSize);
+            System.out.println("\n" + "=".repeat(50));
+            System.out.println("TRANSACTION HISTORY - Account: " + accountNumber);
+            System.out.println("Account Holder: " + accountHolder);
+            System.out.println("Current Balance: $" + Money.format(balance));
+            System.out.println("-".repeat(50));
+            
+            if (page.entries.isEmpty()) {
+                System.out.println("No transactions yet.");
+            } else {
+                for (Transaction transaction : page.entries) {
+                    System.out.println(transaction);
+                }
+            }
+            System.out.println("=".repeat(50));
+            return page.nextCursor;
+        }
+        
         /**
          * Display transaction history
          */
-        public void displayTransactionHistory() {
+        public synchronized void displayTransactionHistory() {
             System.out.println("\n" + "=".repeat(50));
             System.out.println("TRANSACTION HISTORY - Account: " + accountNumber);
             System.out.println("Account Holder: " + accountHolder);
-            System.out.println("Current Balance: $" + String.format("%.2f", balance));
+            System.out.println("Current Balance: $" + Money.format(balance));
             System.out.println("-".repeat(50));
             
             if (transactionHistory.isEmpty()) {
                 System.out.println("No transactions yet.");
             } else {
                 for (int i = 0; i < transactionHistory.size(); i++) {
-                    System.out.println((i + 1) + ". " + transactionHistory.get(i));
+                    System.out.println((i + 1) + ". " + transactionHistory.format(i));
                 }
             }
             System.out.println("=".repeat(50));
@@ -116,64 +746,1238 @@ public class BankAccountSystem {
         /**
          * Display account summary
          */
-        public void displayAccountInfo() {
+        public synchronized void displayAccountInfo() {
             System.out.println("\n" + "=".repeat(40));
             System.out.println("ACCOUNT SUMMARY");
             System.out.println("-".repeat(40));
             System.out.println("Account Number: " + accountNumber);
             System.out.println("Account Holder: " + accountHolder);
-            System.out.println("Current Balance: $" + String.format("%.2f", balance));
+            System.out.println("Current Balance: $" + Money.format(balance));
             System.out.println("Total Transactions: " + (transactionHistory.size() - 1));
             System.out.println("=".repeat(40));
         }
     }
     
     /**
-     * Bank class manages multiple accounts
-     * Demonstrates: Composition, Collections, User Interaction
+     * Write-ahead journal - an append-only log of CREATED, DEPOSIT, WITHDRAWAL,
+     * TRANSFER_OUT, INTEREST and FEE records spread over fixed-size memory-mapped segment files.
+     * Appends are plain memory copies; a background flusher forces the mapped
+     * pages to disk every few milliseconds, so one fsync covers every record
+     * written in that window (group commit). The position of a record in the
+     * log (its LSN) is a global byte offset, which lets snapshots say exactly
+     * which records they already contain.
+     * Every record ends with a CRC32C of its bytes, so a record whose pages
+     * reached the disk only in part is recognised as the end of the log
+     * (records from before the checksum was added are flagged by the type
+     * byte and still replay). Opening for appends discards everything from
+     * that point on, so records beyond a torn one can never resurface once
+     * new ones are written over it.
      */
-    static class Bank {
-        private HashMap<String, Account> accounts;
-        private Scanner scanner;
+    static final class Journal {
+        static final long SEGMENT_BYTES = 64L << 20;
+        private static final long FLUSH_INTERVAL_MS = 5;
+        private static final long SNAPSHOT_EVERY_BYTES = 256L << 20;
+        private static final int MAX_FIELD_BYTES = 0xFFFF;
+        private static final byte END = 0;
+        private static final byte PAD = 0x7F;      // rest of the segment is unused
+        private static final int CHECKSUMMED = 0x40;   // type byte flag: a CRC32C follows the record
         
-        public Bank() {
-            accounts = new HashMap<>();
-            scanner = new Scanner(System.in);
-            System.out.println("🏦 Bank System Initialized!");
+        /**
+         * Receives records during replay
+         */
+        interface Handler {
+            /**
+             * @param other holder name for CREATED, receiving account for TRANSFER_OUT, else null
+             */
+            void apply(long lsn, TxType type, long timestamp, String accountNumber, String other, long cents);
         }
         
+        private final Path dir;
+        private final Object durableLock = new Object();
+        private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+        private final Thread flusher;
+        private MappedByteBuffer segment;
+        private long segmentBase;
+        private long position;                      // LSN of the next record
+        private volatile long durableLsn;           // everything below this is on disk
+        private volatile long lastSnapshotLsn;
+        private volatile Runnable snapshotter;
+        private volatile boolean closed;
+        private final CRC32C checksum = new CRC32C();                 // guarded by this
+        private final ByteBuffer header = ByteBuffer.allocate(19);    // guarded by this
+        
         /**
-         * Create a new bank account
+         * Open the journal for appending at startLsn (the end found by replay)
          */
-        public void createAccount() {
-            System.out.println("\n" + "=".repeat(40));
-            System.out.println("CREATE NEW ACCOUNT");
-            System.out.println("-".repeat(40));
-            
-            System.out.print("Enter account number: ");
-            String accountNumber = scanner.nextLine();
-            
-            // Check if account already exists
-            if (accounts.containsKey(accountNumber)) {
-                System.out.println("✗ Error: Account number already exists!");
-                return;
-            }
-            
-            System.out.print("Enter account holder name: ");
-            String accountHolder = scanner.nextLine();
-            
+        Journal(Path dir, long startLsn) throws IOException {
+            this.dir = dir;
+            this.segmentBase = startLsn - startLsn % SEGMENT_BYTES;
+            this.position = startLsn;
+            this.durableLsn = startLsn;
+            this.lastSnapshotLsn = startLsn;
+            discardFrom(startLsn);
+            this.segment = map(segmentBase);
+            this.flusher = new Thread(this::flushLoop, "bank-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        
+        static Path segmentPath(Path dir, long base) {
+            return dir.resolve(String.format("journal-%016x.log", base));
+        }
+        
+        /**
+         * Cut the log at lsn: the rest of its segment reads as zeros (END)
+         * and every later segment is deleted. Whatever replay stopped at - a
+         * torn record, a bad checksum - is gone before anything is appended
+         * over it, so older valid records past it cannot be replayed later.
+         */
+        private void discardFrom(long lsn) throws IOException {
+            long base = lsn - lsn % SEGMENT_BYTES;
+            Path current = segmentPath(dir, base);
+            if (Files.exists(current)) {
+                try (FileChannel channel = FileChannel.open(current, StandardOpenOption.WRITE)) {
+                    if (channel.size() > lsn - base) {
+                        channel.truncate(lsn - base);   // map() extends it again with zeros
+                        channel.force(true);
+                    }
+                }
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "journal-*.log")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long fileBase;
+                    try {
+                        fileBase = Long.parseUnsignedLong(name.substring(8, name.length() - 4), 16);
+                    } catch (NumberFormatException e) {
+                        continue;   // not a segment this journal wrote
+                    }
+                    if (fileBase > base) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+        
+        private MappedByteBuffer map(long base) throws IOException {
+            try (FileChannel channel = FileChannel.open(segmentPath(dir, base), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            }
+        }
+        
+        /**
+         * Called by the flusher whenever the journal has grown enough since the last snapshot
+         */
+        void setSnapshotter(Runnable snapshotter) {
+            this.snapshotter = snapshotter;
+        }
+        
+        /**
+         * True if text is short enough to be an account number or holder name in a record
+         */
+        static boolean fits(String text) {
+            return text.length() <= MAX_FIELD_BYTES / 3 || text.getBytes(StandardCharsets.UTF_8).length <= MAX_FIELD_BYTES;
+        }
+        
+        /**
+         * Append one record
+         * @param other holder name bytes for CREATED, receiving account bytes for TRANSFER_OUT, else null
+         * @return the record's LSN
+         */
+        synchronized long append(TxType type, long timestamp, byte[] key, byte[] other, long cents) {
+            if (key.length > MAX_FIELD_BYTES || (other != null && other.length > MAX_FIELD_BYTES)) {
+                throw new IllegalArgumentException("Account number or holder name too long to journal");
+            }
+            int bodyEnd = 19 + key.length + (other == null ? 0 : 2 + other.length);
+            int length = bodyEnd + 4;
+            int offset = (int) (position - segmentBase);
+            if (offset + length > SEGMENT_BYTES) {
+                roll(offset);
+                offset = 0;
+            }
+            byte op = (byte) ((type.code() + 1) | CHECKSUMMED);
+            header.clear();
+            header.put(op).putLong(timestamp).putLong(cents).putShort((short) key.length).flip();
+            checksum.reset();
+            checksum.update(header);
+            checksum.update(key);
+            // Body first, type byte last: a record torn by a crash still reads as END
+            segment.putLong(offset + 1, timestamp);
+            segment.putLong(offset + 9, cents);
+            segment.putShort(offset + 17, (short) key.length);
+            segment.put(offset + 19, key);
+            if (other != null) {
+                int otherAt = offset + 19 + key.length;
+                segment.putShort(otherAt, (short) other.length);
+                segment.put(otherAt + 2, other);
+                checksum.update(other.length >>> 8);
+                checksum.update(other.length);
+                checksum.update(other);
+            }
+            segment.putInt(offset + bodyEnd, (int) checksum.getValue());
+            segment.put(offset, op);
+            long lsn = position;
+            position += length;
+            return lsn;
+        }
+        
+        private void roll(int offset) {
+            if (offset < SEGMENT_BYTES) {
+                segment.put(offset, PAD);
+            }
+            segment.force();
+            try {
+                segment = map(segmentBase + SEGMENT_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create journal segment", e);
+            }
+            segmentBase += SEGMENT_BYTES;
+            position = segmentBase;
+        }
+        
+        synchronized long position() {
+            return position;
+        }
+        
+        /**
+         * Force everything appended so far to disk
+         */
+        void flush() {
+            MappedByteBuffer current;
+            long target;
+            synchronized (this) {
+                current = segment;
+                target = position;
+            }
+            if (target == durableLsn) {
+                return;
+            }
+            current.force();    // segments before this one were forced when they rolled
+            synchronized (durableLock) {
+                durableLsn = target;
+                durableLock.notifyAll();
+            }
+        }
+        
+        /**
+         * Block until everything appended so far is durable. Waits for the
+         * flusher instead of forcing directly, so concurrent callers share one fsync.
+         */
+        void sync() {
+            long target = position();
+            synchronized (durableLock) {
+                while (durableLsn < target && !closed) {
+                    try {
+                        durableLock.wait(FLUSH_INTERVAL_MS * 4);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+        
+        private void flushLoop() {
+            while (!closed) {
+                try {
+                    Thread.sleep(FLUSH_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                flush();
+                Runnable task = snapshotter;
+                if (task != null && durableLsn - lastSnapshotLsn > SNAPSHOT_EVERY_BYTES
+                        && snapshotRunning.compareAndSet(false, true)) {
+                    // Snapshots can take a while; keep group commits flowing meanwhile
+                    Thread worker = new Thread(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            snapshotRunning.set(false);
+                        }
+                    }, "bank-snapshot");
+                    worker.setDaemon(true);
+                    worker.start();
+                }
+            }
+        }
+        
+        /**
+         * Drop segments that lie entirely before a snapshot's start LSN
+         */
+        void truncateBefore(long lsn) throws IOException {
+            lastSnapshotLsn = lsn;
+            long currentBase;
+            synchronized (this) {
+                currentBase = segmentBase;
+            }
+            for (long base = lsn - lsn % SEGMENT_BYTES - SEGMENT_BYTES; base >= 0 && base < currentBase;
+                    base -= SEGMENT_BYTES) {
+                if (!Files.deleteIfExists(segmentPath(dir, base))) {
+                    break;  // older segments were removed by an earlier snapshot
+                }
+            }
+        }
+        
+        void close() {
+            closed = true;
+            flusher.interrupt();
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+        
+        /**
+         * Replay every record from fromLsn to the end of the log
+         * @return the LSN where appending should continue
+         */
+        static long replay(Path dir, long fromLsn, Handler handler) throws IOException {
+            long base = fromLsn - fromLsn % SEGMENT_BYTES;
+            int offset = (int) (fromLsn - base);
+            while (Files.exists(segmentPath(dir, base))) {
+                MappedByteBuffer in;
+                try (FileChannel channel = FileChannel.open(segmentPath(dir, base), StandardOpenOption.READ)) {
+                    in = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), SEGMENT_BYTES));
+                }
+                int limit = in.limit();
+                CRC32C checksum = new CRC32C();
+                while (offset < limit) {
+                    byte op = in.get(offset);
+                    if (op == PAD) {
+                        break;
+                    }
+                    int code = (op & ~CHECKSUMMED) - 1;
+                    if (op == END || code < 0 || code >= TxType.count() || offset + 19 > limit) {
+                        return base + offset;
+                    }
+                    // Anything that does not fit or does not check out is a torn tail: the log ends here
+                    int keyLength = in.getShort(offset + 17) & 0xFFFF;
+                    int next = offset + 19 + keyLength;
+                    TxType type = TxType.of((byte) code);
+                    boolean hasOther = type == TxType.CREATED || type == TxType.TRANSFER_OUT;
+                    if (hasOther) {
+                        if (next + 2 > limit) {
+                            return base + offset;
+                        }
+                        next += 2 + (in.getShort(next) & 0xFFFF);
+                    }
+                    if ((op & CHECKSUMMED) != 0) {
+                        if (next + 4 > limit) {
+                            return base + offset;
+                        }
+                        checksum.reset();
+                        checksum.update(in.slice(offset, next - offset));
+                        if ((int) checksum.getValue() != in.getInt(next)) {
+                            return base + offset;
+                        }
+                        next += 4;
+                    } else if (next > limit) {
+                        return base + offset;
+                    }
+                    long timestamp = in.getLong(offset + 1);
+                    long cents = in.getLong(offset + 9);
+                    String accountNumber = readString(in, offset + 19, keyLength);
+                    String other = null;
+                    if (hasOther) {
+                        int otherAt = offset + 19 + keyLength;
+                        other = readString(in, otherAt + 2, in.getShort(otherAt) & 0xFFFF);
+                    }
+                    handler.apply(base + offset, type, timestamp, accountNumber, other, cents);
+                    offset = next;
+                }
+                base += SEGMENT_BYTES;
+                offset = 0;
+            }
+            return base + offset;
+        }
+        
+        private static String readString(MappedByteBuffer in, int at, int length) {
+            byte[] bytes = new byte[length];
+            in.get(at, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * Management interface for BankMetrics, visible in JConsole/VisualVM under
+     * com.elevate.task5:type=BankMetrics
+     */
+    public interface BankMetricsMXBean {
+        Map<String, Long> getCounters();
+        Map<String, Long> getP99LatencyNanos();
+        String getReport();
+    }
+    
+    /**
+     * Log-linear latency histogram in the HDR style: 8 buckets per power of
+     * two (about 12% precision) from 1 ns up to hours. Recording is one
+     * lock-free array increment, so it can sit on every hot path. Like
+     * LongAdder, counts are striped: each thread increments the stripe its
+     * id picks, so threads on different cores do not fight over the same
+     * cache lines, and reads add the stripes up.
+     */
+    static final class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = 64 * SUB_BUCKETS;
+        private static final int STRIPES =
+            Math.min(64, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+        
+        private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+        
+        LatencyHistogram() {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new AtomicLongArray(BUCKETS);
+            }
+        }
+        
+        static int bucketOf(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) Math.max(nanos, 0);
+            }
+            int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+        
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return (SUB_BUCKETS + sub) << (magnitude - SUB_BUCKET_BITS);
+        }
+        
+        void record(long nanos) {
+            stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)].incrementAndGet(bucketOf(nanos));
+        }
+        
+        /**
+         * Approximate value at the given percentile (0-100), or 0 if nothing was recorded
+         */
+        long percentile(double percent) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (AtomicLongArray counts : stripes) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    long count = counts.get(i);
+                    snapshot[i] += count;
+                    total += count;
+                }
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percent / 100.0);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank && snapshot[i] > 0) {
+                    return lowerBound(i);
+                }
+            }
+            return lowerBound(snapshot.length - 1);
+        }
+    }
+    
+    /**
+     * Per-operation counters (one per outcome, so rejections for insufficient
+     * funds, invalid amounts etc. are counted separately) and latency
+     * histograms. Counters are LongAdders, so recording from many threads
+     * does not contend on a shared cache line.
+     */
+    static final class BankMetrics implements BankMetricsMXBean {
+        enum Op { CREATE, LOOKUP, DEPOSIT, WITHDRAW, TRANSFER }
+        
+        private static final Op[] OPS = Op.values();
+        private static final Result[] RESULTS = Result.values();
+        
+        private final LongAdder[][] outcomes = new LongAdder[OPS.length][RESULTS.length];
+        private final LatencyHistogram[] latencies = new LatencyHistogram[OPS.length];
+        
+        BankMetrics() {
+            for (int op = 0; op < OPS.length; op++) {
+                for (int result = 0; result < RESULTS.length; result++) {
+                    outcomes[op][result] = new LongAdder();
+                }
+                latencies[op] = new LatencyHistogram();
+            }
+        }
+        
+        void record(Op op, Result result, long nanos) {
+            outcomes[op.ordinal()][result.ordinal()].increment();
+            latencies[op.ordinal()].record(nanos);
+        }
+        
+        long count(Op op, Result result) {
+            return outcomes[op.ordinal()][result.ordinal()].sum();
+        }
+        
+        long total(Op op) {
+            long total = 0;
+            for (LongAdder adder : outcomes[op.ordinal()]) {
+                total += adder.sum();
+            }
+            return total;
+        }
+        
+        long percentile(Op op, double percent) {
+            return latencies[op.ordinal()].percentile(percent);
+        }
+        
+        @Override
+        public Map<String, Long> getCounters() {
+            Map<String, Long> counters = new LinkedHashMap<>();
+            for (Op op : OPS) {
+                for (Result result : RESULTS) {
+                    long count = count(op, result);
+                    if (count > 0) {
+                        counters.put(op + "." + result, count);
+                    }
+                }
+            }
+            return counters;
+        }
+        
+        @Override
+        public Map<String, Long> getP99LatencyNanos() {
+            Map<String, Long> p99 = new LinkedHashMap<>();
+            for (Op op : OPS) {
+                p99.put(op.name(), percentile(op, 99));
+            }
+            return p99;
+        }
+        
+        @Override
+        public String getReport() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-9s %12s %12s %9s %9s %9s%n", "op", "count", "rejected", "p50 ns", "p99 ns", "p99.9 ns"));
+            for (Op op : OPS) {
+                long total = total(op);
+                sb.append(String.format("%-9s %,12d %,12d %9d %9d %9d%n", op, total, total - count(op, Result.OK),
+                                        percentile(op, 50), percentile(op, 99), percentile(op, 99.9)));
+            }
+            for (Op op : OPS) {
+                for (Result result : RESULTS) {
+                    long count = count(op, result);
+                    if (result != Result.OK && count > 0) {
+                        sb.append(String.format("  %s rejected %s: %,d%n", op, result, count));
+                    }
+                }
+            }
+            return sb.toString();
+        }
+        
+        /**
+         * Publish these metrics over JMX
+         */
+        void registerMBean() {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                                 .registerMBean(this, new ObjectName("com.elevate.task5:type=BankMetrics"));
+            } catch (JMException e) {
+                System.out.println("✗ Error: cannot register metrics MBean - " + e.getMessage());
+            }
+        }
+        
+        /**
+         * Print the report every periodSeconds on a background thread
+         */
+        void startReporting(long periodSeconds) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "bank-metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> System.out.print("\n[metrics]\n" + getReport()),
+                                         periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        }
+    }
+    
+    /**
+     * Entry in the bank's sorted balance index, ordered by exact balance and
+     * then by the order accounts were indexed in. Both are copied into the
+     * key, so comparing two keys never leaves the index node. The index is split into log-linear buckets - 8 per
+     * power of two, each about 12% wide - with its own sorted set each, so a
+     * balance change only re-files the entry within a small set and updates
+     * to different balance ranges do not contend. A null account sorts before
+     * every real account with the same balance, which makes it a range bound.
+     */
+    static final class BalanceKey implements Comparable<BalanceKey> {
+        private static final int SUB_BUCKET_BITS = 3;
+        
+        final long cents;
+        final long order;
+        final Account account;
+        
+        BalanceKey(long cents, Account account) {
+            this.cents = cents;
+            this.order = account == null ? Long.MIN_VALUE : account.indexOrder;
+            this.account = account;
+        }
+        
+        /**
+         * Bucket of a balance in cents; never decreases as the balance grows
+         */
+        static long bucketOf(long cents) {
+            if (cents < (1L << SUB_BUCKET_BITS)) {
+                return cents;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(cents);
+            long sub = (cents >>> (exponent - SUB_BUCKET_BITS)) & ((1L << SUB_BUCKET_BITS) - 1);
+            return ((long) (exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+        }
+        
+        @Override
+        public int compareTo(BalanceKey other) {
+            int byBalance = Long.compare(cents, other.cents);
+            return byBalance != 0 ? byBalance : Long.compare(order, other.order);
+        }
+    }
+    
+    /**
+     * End-of-day accrual rules: interest at annualRateBps / 365 on the
+     * closing balance, then a flat daily fee on accounts left below
+     * minimumBalance. All amounts are whole cents; interest rounds half up
+     * and a fee never takes an account below zero.
+     */
+    static final class AccrualPolicy {
+        private static final long DAILY_DIVISOR = 10_000L * 365;   // basis points per unit, days per year
+        
+        final long annualRateBps;    // 250 = 2.50% a year
+        final long dailyFee;         // cents
+        final long minimumBalance;   // cents; accounts at or above this pay no fee
+        
+        AccrualPolicy(long annualRateBps, long dailyFee, long minimumBalance) {
+            this.annualRateBps = annualRateBps;
+            this.dailyFee = dailyFee;
+            this.minimumBalance = minimumBalance;
+        }
+        
+        /**
+         * Policy from -Dbank.interest.bps, -Dbank.fee.cents and
+         * -Dbank.fee.minimum.cents; null when both interest and fee are zero
+         */
+        static AccrualPolicy fromSystemProperties() {
+            long bps = Long.getLong("bank.interest.bps", 0);
+            long fee = Long.getLong("bank.fee.cents", 0);
+            long minimum = Long.getLong("bank.fee.minimum.cents", 0);
+            return (bps > 0 || fee > 0) ? new AccrualPolicy(bps, fee, minimum) : null;
+        }
+        
+        long interestOn(long balance) {
+            if (annualRateBps <= 0 || balance <= 0) {
+                return 0;
+            }
+            if (balance <= (Long.MAX_VALUE - DAILY_DIVISOR / 2) / annualRateBps) {
+                return (balance * annualRateBps + DAILY_DIVISOR / 2) / DAILY_DIVISOR;
+            }
+            // Only reachable for balances near the cents limit
+            BigInteger exact = BigInteger.valueOf(balance).multiply(BigInteger.valueOf(annualRateBps))
+                                         .add(BigInteger.valueOf(DAILY_DIVISOR / 2))
+                                         .divide(BigInteger.valueOf(DAILY_DIVISOR));
+            return exact.bitLength() < 64 ? exact.longValue() : Long.MAX_VALUE;
+        }
+        
+        long feeOn(long balance) {
+            return (dailyFee > 0 && balance < minimumBalance) ? Math.min(dailyFee, balance) : 0;
+        }
+    }
+    
+    /**
+     * Totals for one accrual run; the adders are shared by every worker
+     */
+    static final class AccrualReport {
+        final LongAdder accounts = new LongAdder();
+        final LongAdder interest = new LongAdder();
+        final LongAdder fees = new LongAdder();
+        final LongAdder feeAccounts = new LongAdder();
+        long nanos;
+        
+        void print() {
+            long count = accounts.sum();
+            System.out.println("\n" + "=".repeat(50));
+            System.out.println("END-OF-DAY ACCRUAL");
+            System.out.println("-".repeat(50));
+            System.out.printf("Accounts:        %,d%n", count);
+            System.out.println("Interest paid:   $" + Money.format(interest.sum()));
+            System.out.printf("Fees charged:    $%s (%,d accounts)%n", Money.format(fees.sum()), feeAccounts.sum());
+            System.out.printf("Elapsed:         %,d ms%n", nanos / 1_000_000);
+            System.out.printf("Throughput:      %,d accounts/sec%n", nanos == 0 ? 0 : count * 1_000_000_000L / nanos);
+            System.out.println("=".repeat(50));
+        }
+    }
+    
+    /**
+     * Bank class manages multiple accounts
+     * Demonstrates: Composition, Collections, User Interaction
+     * The account store is a ConcurrentHashMap, so lookups and account
+     * creation are safe from many teller threads at once
+     * With a data directory every change is journaled and the bank is
+     * rebuilt on startup from the latest snapshot plus the journal tail
+     */
+    static class Bank {
+        private static final String SNAPSHOT_FILE = "snapshot.dat";
+        private static final String HISTORY_FILE = "history.dat";
+        private static final String ACCRUAL_FILE = "accrual.dat";   // last business day accrued, ISO date
+        private static final int SNAPSHOT_MAGIC = 0x424E4B34;       // "BNK4", accounts plus the history file length
+        private static final int ENTRY_BYTES = 17;          // history file bytes per entry
+        private static final int SEARCH_LIMIT = 50;
+        private static final int HISTORY_PAGE_SIZE = 20;
+        private static final long ACCRUAL_BATCH = 4096;   // accounts per fork/join leaf task
+        
+        private final ConcurrentHashMap<String, Account> accounts;
+        private Scanner scanner;
+        private final Path dataDir;     // null when running in memory only
+        private final Journal journal;
+        private long historyEnd;        // length of the history file the current snapshot covers
+        // Secondary indexes: lower-cased "holder\0accountNumber" -> account, and accounts by balance bucket
+        private final ConcurrentSkipListMap<String, Account> holderIndex = new ConcurrentSkipListMap<>();
+        private final ConcurrentSkipListMap<Long, ConcurrentSkipListSet<BalanceKey>> balanceIndex =
+            new ConcurrentSkipListMap<>();
+        private final AtomicLong indexed = new AtomicLong();
+        private final BankMetrics metrics = new BankMetrics();
+        private ScheduledExecutorService accrualScheduler;
+        private final Object accrualLock = new Object();
+        private LocalDate lastAccrued;      // guarded by accrualLock; null before the first run
+        private final BalanceListener balanceListener = (account, oldBalance, newBalance) -> {
+            balanceBucket(oldBalance).remove(new BalanceKey(oldBalance, account));
+            balanceBucket(newBalance).add(new BalanceKey(newBalance, account));
+        };
+        
+        public Bank() {
+            accounts = new ConcurrentHashMap<>();
+            scanner = new Scanner(System.in);
+            dataDir = null;
+            journal = null;
+            System.out.println("🏦 Bank System Initialized!");
+        }
+        
+        /**
+         * Open a persistent bank, recovering any state saved in dataDir
+         */
+        public Bank(Path dataDir) throws IOException {
+            accounts = new ConcurrentHashMap<>();
+            scanner = new Scanner(System.in);
+            this.dataDir = dataDir;
+            Files.createDirectories(dataDir);
+            
+            long start = System.nanoTime();
+            Path accrualFile = dataDir.resolve(ACCRUAL_FILE);
+            if (Files.exists(accrualFile)) {
+                lastAccrued = LocalDate.parse(Files.readString(accrualFile, StandardCharsets.UTF_8).trim());
+            }
+            long snapshotLsn = loadSnapshot();
+            long[] replayed = new long[1];
+            long endLsn = Journal.replay(dataDir, snapshotLsn, (lsn, type, timestamp, number, other, cents) -> {
+                replayed[0]++;
+                if (type == TxType.CREATED) {
+                    Account account = new Account(number, other, cents, timestamp);
+                    account.lastLsn = lsn;
+                    accounts.putIfAbsent(number, account);
+                } else if (type == TxType.TRANSFER_OUT) {
+                    Account from = accounts.get(number);
+                    Account to = accounts.get(other);
+                    if (from != null && to != null) {
+                        from.replay(lsn, TxType.TRANSFER_OUT, timestamp, cents);
+                        to.replay(lsn, TxType.TRANSFER_IN, timestamp, cents);
+                    }
+                } else {
+                    Account account = accounts.get(number);
+                    if (account != null) {
+                        account.replay(lsn, type, timestamp, cents);
+                    }
+                }
+            });
+            journal = new Journal(dataDir, endLsn);
+            for (Account account : accounts.values()) {
+                account.journal = journal;
+                index(account);
+            }
+            journal.setSnapshotter(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.out.println("✗ Error: snapshot failed - " + e.getMessage());
+                }
+            });
+            System.out.println("🏦 Bank System Initialized! Restored " + accounts.size() + " accounts, replayed "
+                               + replayed[0] + " journal records in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        
+        /**
+         * An account as the snapshot lists it, filled from the history file
+         */
+        private static final class SavedAccount {
+            final String holder;
+            final long lastLsn;
+            final int entries;
+            final long balance;
+            final TransactionLog history = new TransactionLog();
+            
+            SavedAccount(String holder, long lastLsn, int entries, long balance) {
+                this.holder = holder;
+                this.lastLsn = lastLsn;
+                this.entries = entries;
+                this.balance = balance;
+            }
+        }
+        
+        /**
+         * Load the snapshot, if any, and the history it covers
+         * @return the LSN replay should start from
+         */
+        private long loadSnapshot() throws IOException {
+            Path file = dataDir.resolve(SNAPSHOT_FILE);
+            if (!Files.exists(file)) {
+                return 0;
+            }
+            Map<String, SavedAccount> saved = new LinkedHashMap<>();
+            long startLsn;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a bank snapshot: " + file);
+                }
+                startLsn = in.readLong();
+                while (in.readBoolean()) {
+                    String number = in.readUTF();
+                    saved.put(number, new SavedAccount(in.readUTF(), in.readLong(), in.readInt(), in.readLong()));
+                }
+                historyEnd = in.readLong();
+            }
+            
+            // Anything past historyEnd belongs to a snapshot that never completed; the next one overwrites it
+            Path historyFile = dataDir.resolve(HISTORY_FILE);
+            if (historyEnd > (Files.exists(historyFile) ? Files.size(historyFile) : 0)) {
+                throw new IOException(historyFile + " is shorter than " + file + " expects");
+            }
+            if (historyEnd > 0) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(historyFile), 1 << 16))) {
+                    long position = 0;
+                    while (position < historyEnd) {
+                        long start = position;
+                        byte[] key = new byte[in.readUnsignedShort()];
+                        in.readFully(key);
+                        int count = in.readInt();
+                        SavedAccount account = saved.get(new String(key, StandardCharsets.UTF_8));
+                        position += 2 + key.length + 4;
+                        if (account == null || count < 0 || count > (historyEnd - position) / ENTRY_BYTES) {
+                            throw new IOException("Bad history record at " + start + " in " + historyFile);
+                        }
+                        account.history.readEntries(in, count);
+                        position += (long) count * ENTRY_BYTES;
+                    }
+                }
+            }
+            
+            for (Map.Entry<String, SavedAccount> entry : saved.entrySet()) {
+                SavedAccount savedAccount = entry.getValue();
+                TransactionLog history = savedAccount.history;
+                if (history.isEmpty() || history.size() != savedAccount.entries
+                    || history.balance() != savedAccount.balance) {
+                    throw new IOException("Account " + entry.getKey() + " does not match its history in " + historyFile);
+                }
+                Account account = new Account(entry.getKey(), savedAccount.holder, history);
+                account.lastLsn = savedAccount.lastLsn;
+                account.persistedEntries = savedAccount.entries;
+                accounts.put(entry.getKey(), account);
+            }
+            return startLsn;
+        }
+        
+        /**
+         * Write a snapshot and drop the journal segments it makes redundant.
+         * History is append-only, so only entries added since the last
+         * snapshot go to the end of the history file; the snapshot itself
+         * lists each account with its entry count and balance, plus how much
+         * of the history file it covers. Runs alongside normal traffic: each
+         * account's log is captured under its own lock together with the LSN
+         * of its last change, so replay knows which later records are already
+         * included, and is written out after the lock is released.
+         */
+        public synchronized void snapshot() throws IOException {
+            if (journal == null) {
+                return;
+            }
+            long startLsn = journal.position();
+            List<Map.Entry<Account, Integer>> written = new ArrayList<>();
+            long newHistoryEnd;
+            Path tmp = dataDir.resolve(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel historyChannel = FileChannel.open(dataDir.resolve(HISTORY_FILE), StandardOpenOption.CREATE,
+                                                               StandardOpenOption.WRITE);
+                 DataOutputStream history = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(historyChannel), 1 << 16));
+                 FileOutputStream file = new FileOutputStream(tmp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                historyChannel.truncate(historyEnd);
+                historyChannel.position(historyEnd);
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(startLsn);
+                for (Account account : accounts.values()) {
+                    TransactionLog view;
+                    long lastLsn;
+                    synchronized (account) {
+                        view = account.historyView();
+                        lastLsn = account.lastLsn;
+                    }
+                    if (view.size() > account.persistedEntries) {
+                        history.writeShort(account.accountKey.length);
+                        history.write(account.accountKey);
+                        history.writeInt(view.size() - account.persistedEntries);
+                        view.writeEntries(history, account.persistedEntries);
+                        written.add(Map.entry(account, view.size()));
+                    }
+                    out.writeBoolean(true);
+                    out.writeUTF(account.getAccountNumber());
+                    out.writeUTF(account.getAccountHolder());
+                    out.writeLong(lastLsn);
+                    out.writeInt(view.size());
+                    out.writeLong(view.balance());
+                }
+                out.writeBoolean(false);
+                // The history must be durable before a snapshot that points into it
+                history.flush();
+                historyChannel.force(false);
+                newHistoryEnd = historyChannel.position();
+                out.writeLong(newHistoryEnd);
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(tmp, dataDir.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            historyEnd = newHistoryEnd;
+            for (Map.Entry<Account, Integer> entry : written) {
+                entry.getKey().persistedEntries = entry.getValue();
+            }
+            journal.truncateBefore(startLsn);
+        }
+        
+        /**
+         * Wait until every change made so far is on disk (no-op in memory)
+         */
+        public void sync() {
+            if (journal != null) {
+                journal.sync();
+            }
+        }
+        
+        /**
+         * Run one day's accrual over every account, whatever day it is.
+         * ConcurrentHashMap's bulk forEachValue splits the table into
+         * fork/join tasks on the common pool; each account is locked only
+         * while its own entries are posted, so tellers keep working
+         * throughout. End-of-day runs go through accrueDay, which pays each
+         * business day once.
+         */
+        public AccrualReport accrue(AccrualPolicy policy) {
+            AccrualReport report = new AccrualReport();
+            long start = System.nanoTime();
+            long now = System.currentTimeMillis();
+            accounts.forEachValue(ACCRUAL_BATCH, account -> account.accrue(policy, now, report));
+            report.nanos = System.nanoTime() - start;
+            return report;
+        }
+        
+        /**
+         * End-of-day accrual for businessDay, unless that day or a later one
+         * has already been accrued. Once the entries are durable the day is
+         * saved in the data directory, so a manual run followed by the
+         * midnight one, or a restart in between, does not pay it twice.
+         * @return the run's totals, or null if businessDay was already accrued
+         */
+        public AccrualReport accrueDay(AccrualPolicy policy, LocalDate businessDay) {
+            synchronized (accrualLock) {
+                if (lastAccrued != null && !businessDay.isAfter(lastAccrued)) {
+                    return null;
+                }
+                AccrualReport report = accrue(policy);
+                sync();
+                lastAccrued = businessDay;
+                if (dataDir != null) {
+                    try {
+                        Path tmp = dataDir.resolve(ACCRUAL_FILE + ".tmp");
+                        Files.writeString(tmp, businessDay.toString(), StandardCharsets.UTF_8);
+                        Files.move(tmp, dataDir.resolve(ACCRUAL_FILE), StandardCopyOption.ATOMIC_MOVE,
+                                   StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException e) {
+                        System.out.println("✗ Error: cannot record accrual of " + businessDay + " - " + e.getMessage());
+                    }
+                }
+                return report;
+            }
+        }
+        
+        /**
+         * Run accrual every day at local midnight on a background thread.
+         * Each run schedules the next from the following local midnight, so
+         * a 23- or 25-hour day across a DST change does not shift it.
+         */
+        public synchronized void scheduleAccrual(AccrualPolicy policy) {
+            if (accrualScheduler != null) {
+                accrualScheduler.shutdown();
+            }
+            accrualScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "bank-accrual");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduleAccrualAt(accrualScheduler, policy, LocalDate.now().plusDays(1));
+        }
+        
+        /**
+         * Close the business day before midnightOf at its first local instant, then schedule the next day
+         */
+        private void scheduleAccrualAt(ScheduledExecutorService scheduler, AccrualPolicy policy, LocalDate midnightOf) {
+            ZonedDateTime midnight = midnightOf.atStartOfDay(ZoneId.systemDefault());
+            long delay = Math.max(0, midnight.toInstant().toEpochMilli() - System.currentTimeMillis());
+            scheduler.schedule(() -> {
+                try {
+                    AccrualReport report = accrueDay(policy, midnightOf.minusDays(1));
+                    if (report != null) {
+                        report.print();
+                    }
+                } finally {
+                    if (!scheduler.isShutdown()) {
+                        scheduleAccrualAt(scheduler, policy, midnightOf.plusDays(1));
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        
+        /**
+         * Snapshot and close the journal - call on shutdown
+         */
+        public void close() {
+            synchronized (this) {
+                if (accrualScheduler != null) {
+                    accrualScheduler.shutdown();
+                }
+            }
+            if (journal == null) {
+                return;
+            }
+            try {
+                snapshot();
+            } catch (IOException e) {
+                System.out.println("✗ Error: snapshot failed - " + e.getMessage());
+            }
+            journal.close();
+        }
+        
+        /**
+         * Create a new bank account
+         */
+        public void createAccount() {
+            System.out.println("\n" + "=".repeat(40));
+            System.out.println("CREATE NEW ACCOUNT");
+            System.out.println("-".repeat(40));
+            
+            System.out.print("Enter account number: ");
+            String accountNumber = scanner.nextLine();
+            
+            // Check if account already exists
+            if (accounts.containsKey(accountNumber)) {
+                System.out.println("✗ Error: Account number already exists!");
+                return;
+            }
+            
+            System.out.print("Enter account holder name: ");
+            String accountHolder = scanner.nextLine();
+            
             System.out.print("Enter initial deposit amount: $");
             double initialBalance = scanner.nextDouble();
             scanner.nextLine(); // Clear the newline character
             
-            if (initialBalance < 0) {
+            long initialCents = Money.toCents(initialBalance);
+            if (initialCents < 0) {
                 System.out.println("✗ Error: Initial balance cannot be negative!");
                 return;
             }
             
             // Create and store the new account
-            Account newAccount = new Account(accountNumber, accountHolder, initialBalance);
-            accounts.put(accountNumber, newAccount);
+            Result result = open(accountNumber, accountHolder, initialCents);
+            if (result == Result.INVALID_NAME) {
+                System.out.println("✗ Error: Account number or holder name is too long!");
+                return;
+            }
+            if (result != Result.OK) {
+                System.out.println("✗ Error: Account number already exists!");
+                return;
+            }
+            sync();
+            System.out.println("✓ Account created successfully for " + accountHolder);
+        }
+        
+        /**
+         * Open an account programmatically (no console I/O)
+         * @return the new account, or null if it could not be opened (see open)
+         */
+        public Account openAccount(String accountNumber, String accountHolder, long initialBalance) {
+            return open(accountNumber, accountHolder, initialBalance) == Result.OK ? accounts.get(accountNumber) : null;
+        }
+        
+        /**
+         * Open an account and say why not when it fails (no console I/O).
+         * Everything the journal could reject is checked before the account
+         * becomes visible, so a failure never leaves a half-opened account behind.
+         * @return OK, INVALID_AMOUNT, INVALID_NAME or ACCOUNT_EXISTS
+         */
+        public Result open(String accountNumber, String accountHolder, long initialBalance) {
+            long start = System.nanoTime();
+            Result result;
+            if (initialBalance < 0) {
+                result = Result.INVALID_AMOUNT;
+            } else if (!Journal.fits(accountNumber) || !Journal.fits(accountHolder)) {
+                result = Result.INVALID_NAME;
+            } else {
+                Account newAccount = new Account(accountNumber, accountHolder, initialBalance);
+                synchronized (newAccount) {
+                    // putIfAbsent is atomic, so two tellers can never open the same number twice
+                    if (accounts.putIfAbsent(accountNumber, newAccount) != null) {
+                        result = Result.ACCOUNT_EXISTS;
+                    } else {
+                        newAccount.journalCreated(journal);
+                        index(newAccount);
+                        result = Result.OK;
+                    }
+                }
+            }
+            metrics.record(BankMetrics.Op.CREATE, result, System.nanoTime() - start);
+            return result;
+        }
+        
+        /**
+         * Operation counters and latency histograms for this bank
+         */
+        public BankMetrics metrics() {
+            return metrics;
+        }
+        
+        /**
+         * Add a new account to the secondary indexes; caller holds the account's lock
+         */
+        private void index(Account account) {
+            holderIndex.put(holderKey(account.getAccountHolder()) + '\0' + account.getAccountNumber(), account);
+            account.indexOrder = indexed.getAndIncrement();
+            long balance = account.getBalanceCents();
+            balanceBucket(balance).add(new BalanceKey(balance, account));
+            account.listener = balanceListener;
+        }
+        
+        private ConcurrentSkipListSet<BalanceKey> balanceBucket(long cents) {
+            return balanceIndex.computeIfAbsent(BalanceKey.bucketOf(cents), bucket -> new ConcurrentSkipListSet<>());
+        }
+        
+        private static String holderKey(String holder) {
+            return holder.toLowerCase(Locale.ROOT);
+        }
+        
+        /**
+         * Accounts whose holder name starts with prefix (case-insensitive), in name order
+         * @param limit maximum number of accounts to return
+         */
+        public List<Account> findByHolderPrefix(String prefix, int limit) {
+            String from = holderKey(prefix);
+            List<Account> found = new ArrayList<>();
+            for (Account account : holderIndex.subMap(from, true, from + Character.MAX_VALUE, true).values()) {
+                if (found.size() == limit) {
+                    break;
+                }
+                found.add(account);
+            }
+            return found;
+        }
+        
+        /**
+         * Accounts with minCents <= balance < maxCents, lowest balance first
+         * @param limit maximum number of accounts to return
+         */
+        public List<Account> findByBalanceRange(long minCents, long maxCents, int limit) {
+            if (minCents >= maxCents) {
+                return new ArrayList<>();
+            }
+            return findByBalanceBetween(minCents, maxCents - 1, limit);
+        }
+        
+        /**
+         * Accounts with a balance strictly greater than cents, lowest balance first
+         */
+        public List<Account> findByBalanceAbove(long cents, int limit) {
+            if (cents == Long.MAX_VALUE) {
+                return new ArrayList<>();
+            }
+            return findByBalanceBetween(cents + 1, Long.MAX_VALUE, limit);
+        }
+        
+        /**
+         * Walk the buckets covering minCents..maxCents (both inclusive) in
+         * order; each is sorted by exact balance, so only the entries returned
+         * are visited.
+         */
+        private List<Account> findByBalanceBetween(long minCents, long maxCents, int limit) {
+            List<Account> found = new ArrayList<>();
+            BalanceKey from = new BalanceKey(minCents, null);
+            for (ConcurrentSkipListSet<BalanceKey> bucket :
+                     balanceIndex.subMap(BalanceKey.bucketOf(minCents), true, BalanceKey.bucketOf(maxCents), true).values()) {
+                for (BalanceKey key : bucket.tailSet(from)) {
+                    if (key.cents > maxCents || found.size() == limit) {
+                        return found;
+                    }
+                    found.add(key.account);
+                }
+            }
+            return found;
+        }
+        
+        /**
+         * Look up an account by number
+         * @return the account, or null if not found
+         */
+        public Account getAccount(String accountNumber) {
+            long start = System.nanoTime();
+            Account account = accounts.get(accountNumber);
+            metrics.record(BankMetrics.Op.LOOKUP, account == null ? Result.ACCOUNT_NOT_FOUND : Result.OK,
+                           System.nanoTime() - start);
+            return account;
+        }
+        
+        /**
+         * Deposit cents into an account by number (no console I/O)
+         */
+        public Result deposit(String accountNumber, long amount) {
+            long start = System.nanoTime();
+            Account account = accounts.get(accountNumber);
+            Result result = account == null ? Result.ACCOUNT_NOT_FOUND : account.credit(amount);
+            metrics.record(BankMetrics.Op.DEPOSIT, result, System.nanoTime() - start);
+            return result;
+        }
+        
+        /**
+         * Withdraw cents from an account by number (no console I/O)
+         */
+        public Result withdraw(String accountNumber, long amount) {
+            long start = System.nanoTime();
+            Account account = accounts.get(accountNumber);
+            Result result = account == null ? Result.ACCOUNT_NOT_FOUND : account.debit(amount);
+            metrics.record(BankMetrics.Op.WITHDRAW, result, System.nanoTime() - start);
+            return result;
+        }
+        
+        /**
+         * Transfer cents between two accounts atomically (no console I/O)
+         */
+        public Result transfer(String fromNumber, String toNumber, long amount) {
+            long start = System.nanoTime();
+            Account from = accounts.get(fromNumber);
+            Account to = accounts.get(toNumber);
+            Result result = (from == null || to == null) ? Result.ACCOUNT_NOT_FOUND : Account.transfer(from, to, amount);
+            metrics.record(BankMetrics.Op.TRANSFER, result, System.nanoTime() - start);
+            return result;
         }
         
         /**
@@ -183,7 +1987,7 @@ public class BankAccountSystem {
             System.out.print("\nEnter account number to access: ");
             String accountNumber = scanner.nextLine();
             
-            Account account = accounts.get(accountNumber);
+            Account account = getAccount(accountNumber);
             if (account == null) {
                 System.out.println("✗ Error: Account not found!");
                 return;
@@ -206,8 +2010,9 @@ public class BankAccountSystem {
                 System.out.println("3. 📊 Check Balance");
                 System.out.println("4. 📋 View Transaction History");
                 System.out.println("5. 👤 Account Summary");
-                System.out.println("6. ↩️  Back to Main Menu");
-                System.out.print("Choose an option (1-6): ");
+                System.out.println("6. 🔁 Transfer Money");
+                System.out.println("7. ↩️  Back to Main Menu");
+                System.out.print("Choose an option (1-7): ");
                 
                 int choice = scanner.nextInt();
                 scanner.nextLine(); // Clear newline
@@ -223,17 +2028,34 @@ public class BankAccountSystem {
                         checkBalance(account);
                         break;
                     case 4:
-                        account.displayTransactionHistory();
+                        showHistory(account);
                         break;
                     case 5:
                         account.displayAccountInfo();
                         break;
                     case 6:
+                        performTransfer(account);
+                        break;
+                    case 7:
                         System.out.println("Returning to main menu...");
                         return;
                     default:
-                        System.out.println("✗ Invalid choice! Please enter 1-6.");
+                        System.out.println("✗ Invalid choice! Please enter 1-7.");
+                }
+            }
+        }
+        
+        /**
+         * Page through transaction history, newest entries first
+         */
+        private void showHistory(Account account) {
+            int cursor = account.displayTransactionHistory(Account.LATEST, HISTORY_PAGE_SIZE);
+            while (cursor != HistoryPage.NO_MORE) {
+                System.out.print("Show older transactions? (y/n): ");
+                if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                    return;
                 }
+                cursor = account.displayTransactionHistory(cursor, HISTORY_PAGE_SIZE);
             }
         }
         
@@ -244,7 +2066,12 @@ public class BankAccountSystem {
             System.out.print("\nEnter deposit amount: $");
             double amount = scanner.nextDouble();
             scanner.nextLine();
-            account.deposit(amount);
+            if (deposit(account.getAccountNumber(), Money.toCents(amount)) == Result.OK) {
+                sync();
+                System.out.println("✓ Deposit successful! New balance: $" + Money.format(account.getBalanceCents()));
+            } else {
+                System.out.println("✗ Error: Deposit amount must be positive!");
+            }
         }
         
         /**
@@ -254,7 +2081,46 @@ public class BankAccountSystem {
             System.out.print("\nEnter withdrawal amount: $");
             double amount = scanner.nextDouble();
             scanner.nextLine();
-            account.withdraw(amount);
+            switch (withdraw(account.getAccountNumber(), Money.toCents(amount))) {
+                case OK:
+                    sync();
+                    System.out.println("✓ Withdrawal successful! New balance: $" + Money.format(account.getBalanceCents()));
+                    break;
+                case INSUFFICIENT_FUNDS:
+                    System.out.println("✗ Error: Insufficient funds! Available: $" + Money.format(account.getBalanceCents()));
+                    break;
+                default:
+                    System.out.println("✗ Error: Withdrawal amount must be positive!");
+            }
+        }
+        
+        /**
+         * Perform transfer operation
+         */
+        private void performTransfer(Account account) {
+            System.out.print("\nEnter destination account number: ");
+            String toNumber = scanner.nextLine();
+            System.out.print("Enter transfer amount: $");
+            double amount = scanner.nextDouble();
+            scanner.nextLine();
+            
+            switch (transfer(account.getAccountNumber(), toNumber, Money.toCents(amount))) {
+                case OK:
+                    sync();
+                    System.out.println("✓ Transfer successful! New balance: $" + Money.format(account.getBalanceCents()));
+                    break;
+                case ACCOUNT_NOT_FOUND:
+                    System.out.println("✗ Error: Account not found!");
+                    break;
+                case SAME_ACCOUNT:
+                    System.out.println("✗ Error: Cannot transfer to the same account!");
+                    break;
+                case INSUFFICIENT_FUNDS:
+                    System.out.println("✗ Error: Insufficient funds! Available: $" + Money.format(account.getBalanceCents()));
+                    break;
+                default:
+                    System.out.println("✗ Error: Transfer amount must be positive!");
+            }
         }
         
         /**
@@ -265,7 +2131,7 @@ public class BankAccountSystem {
             System.out.println("BALANCE INQUIRY");
             System.out.println("Account: " + account.getAccountNumber());
             System.out.println("Holder: " + account.getAccountHolder());
-            System.out.println("Current Balance: $" + String.format("%.2f", account.getBalance()));
+            System.out.println("Current Balance: $" + Money.format(account.getBalanceCents()));
             System.out.println("-".repeat(30));
         }
         
@@ -284,7 +2150,7 @@ public class BankAccountSystem {
                 for (Account account : accounts.values()) {
                     System.out.println(count + ". " + account.getAccountNumber() + 
                                      " - " + account.getAccountHolder() + 
-                                     " - Balance: $" + String.format("%.2f", account.getBalance()));
+                                     " - Balance: $" + Money.format(account.getBalanceCents()));
                     count++;
                 }
                 System.out.println("Total Accounts: " + accounts.size());
@@ -292,6 +2158,47 @@ public class BankAccountSystem {
             System.out.println("=".repeat(50));
         }
         
+        /**
+         * Search accounts by holder name prefix or minimum balance
+         */
+        public void searchAccounts() {
+            System.out.print("\nSearch by (1) holder name prefix or (2) minimum balance: ");
+            int mode = scanner.nextInt();
+            scanner.nextLine();
+            List<Account> found;
+            if (mode == 1) {
+                System.out.print("Enter name prefix: ");
+                found = findByHolderPrefix(scanner.nextLine(), SEARCH_LIMIT);
+            } else if (mode == 2) {
+                System.out.print("Enter minimum balance: $");
+                double minimum = scanner.nextDouble();
+                scanner.nextLine();
+                found = findByBalanceRange(Math.max(0, Money.toCents(minimum)), Long.MAX_VALUE, SEARCH_LIMIT);
+            } else {
+                System.out.println("✗ Invalid choice! Please enter 1 or 2.");
+                return;
+            }
+            
+            System.out.println("\n" + "=".repeat(50));
+            System.out.println("SEARCH RESULTS");
+            System.out.println("-".repeat(50));
+            if (found.isEmpty()) {
+                System.out.println("No matching accounts.");
+            } else {
+                int count = 1;
+                for (Account account : found) {
+                    System.out.println(count + ". " + account.getAccountNumber() + 
+                                     " - " + account.getAccountHolder() + 
+                                     " - Balance: $" + Money.format(account.getBalanceCents()));
+                    count++;
+                }
+                if (found.size() == SEARCH_LIMIT) {
+                    System.out.println("(showing first " + SEARCH_LIMIT + " matches)");
+                }
+            }
+            System.out.println("=".repeat(50));
+        }
+        
         /**
          * Main menu for the bank system
          */
@@ -307,8 +2214,9 @@ public class BankAccountSystem {
                 System.out.println("1. 🆕 Create New Account");
                 System.out.println("2. 🔓 Access Existing Account");
                 System.out.println("3. 📋 Display All Accounts");
-                System.out.println("4. 🚪 Exit System");
-                System.out.print("Choose an option (1-4): ");
+                System.out.println("4. 🔎 Search Accounts");
+                System.out.println("5. 🚪 Exit System");
+                System.out.print("Choose an option (1-5): ");
                 
                 int choice = scanner.nextInt();
                 scanner.nextLine(); // Clear newline
@@ -324,24 +2232,896 @@ public class BankAccountSystem {
                         displayAllAccounts();
                         break;
                     case 4:
+                        searchAccounts();
+                        break;
+                    case 5:
                         System.out.println("\n" + "💫".repeat(20));
                         System.out.println("  Thank you for using our Bank System!");
                         System.out.println("            Have a great day! 👋");
                         System.out.println("💫".repeat(20));
                         return;
                     default:
-                        System.out.println("✗ Invalid choice! Please enter 1-4.");
+                        System.out.println("✗ Invalid choice! Please enter 1-5.");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Headless batch mode - streams a CSV of transactions through a Bank.
+     * One line per operation:
+     *   CREATE,account,amount,holder
+     *   DEPOSIT,account,amount
+     *   WITHDRAW,account,amount
+     *   TRANSFER,fromAccount,amount,toAccount
+     * The reader only finds the account field and routes the raw line to a
+     * worker chosen by account hash; workers parse and apply. Every account
+     * is owned by one worker, so its operations keep file order while
+     * different accounts proceed in parallel. A transfer whose destination
+     * belongs to another worker is a meeting point for the two: it runs
+     * only once both have applied every earlier line, and the destination's
+     * worker waits for it before going on, so both accounts still see their
+     * lines in file order. Bounded queues keep memory flat on arbitrarily
+     * large files.
+     */
+    static final class BatchIngestor {
+        private static final int BATCH_SIZE = 4096;
+        private static final int QUEUE_DEPTH = 16;
+        private static final long REPORT_EVERY = 1_000_000;
+        private static final Object[] POISON = new Object[0];
+        
+        /**
+         * A transfer between accounts owned by different workers, queued to
+         * both. The source's worker applies it once the destination's worker
+         * has arrived; the destination's worker waits until it is done.
+         */
+        private static final class Handoff {
+            final String line;
+            final int sourceWorker;
+            final CountDownLatch arrived = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(1);
+            
+            Handoff(String line, int sourceWorker) {
+                this.line = line;
+                this.sourceWorker = sourceWorker;
+            }
+        }
+        
+        /**
+         * Totals for one ingest run
+         */
+        static final class Report {
+            final long[] byResult = new long[Result.values().length];
+            long malformed;
+            long failed;              // lines whose operation threw
+            String firstFailure;
+            long lines;
+            long nanos;
+            
+            long rejected() {
+                long total = malformed + failed;
+                for (int i = 1; i < byResult.length; i++) {
+                    total += byResult[i];
+                }
+                return total;
+            }
+            
+            void print() {
+                System.out.println("\n" + "=".repeat(50));
+                System.out.println("BATCH SUMMARY");
+                System.out.println("-".repeat(50));
+                System.out.printf("Operations:      %,d%n", lines);
+                System.out.printf("Accepted:        %,d%n", byResult[Result.OK.ordinal()]);
+                System.out.printf("Rejected:        %,d%n", rejected());
+                for (Result result : Result.values()) {
+                    if (result != Result.OK && byResult[result.ordinal()] > 0) {
+                        System.out.printf("  %-20s %,d%n", result, byResult[result.ordinal()]);
+                    }
+                }
+                if (malformed > 0) {
+                    System.out.printf("  %-20s %,d%n", "MALFORMED", malformed);
+                }
+                if (failed > 0) {
+                    System.out.printf("  %-20s %,d (first: %s)%n", "FAILED", failed, firstFailure);
+                }
+                System.out.printf("Elapsed:         %,d ms%n", nanos / 1_000_000);
+                System.out.printf("Throughput:      %,d ops/sec%n", nanos == 0 ? 0 : lines * 1_000_000_000L / nanos);
+                System.out.println("=".repeat(50));
+            }
+        }
+        
+        private final Bank bank;
+        private final int workers;
+        private final AtomicLong processed = new AtomicLong();
+        private long lastReportNanos;
+        private long lastReportCount;
+        
+        BatchIngestor(Bank bank, int workers) {
+            this.bank = bank;
+            this.workers = workers;
+        }
+        
+        Report ingest(Path file) throws IOException, InterruptedException {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return ingest(reader);
+            }
+        }
+        
+        Report ingest(BufferedReader reader) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            lastReportNanos = start;
+            List<ArrayBlockingQueue<Object[]>> queues = new ArrayList<>(workers);
+            Report[] partials = new Report[workers];
+            Thread[] threads = new Thread[workers];
+            for (int w = 0; w < workers; w++) {
+                ArrayBlockingQueue<Object[]> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+                Report partial = new Report();
+                int worker = w;
+                queues.add(queue);
+                partials[w] = partial;
+                threads[w] = new Thread(() -> work(worker, queue, partial), "batch-worker-" + w);
+                threads[w].start();
+            }
+            
+            Object[][] pending = new Object[workers][BATCH_SIZE];
+            int[] fill = new int[workers];
+            long unroutable = 0;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int first = line.indexOf(',');
+                    if (first < 0) {
+                        if (!line.isBlank()) {
+                            unroutable++;
+                        }
+                        continue;
+                    }
+                    int second = line.indexOf(',', first + 1);
+                    int w = workerFor(line, first + 1, second < 0 ? line.length() : second);
+                    int third = second < 0 ? -1 : line.indexOf(',', second + 1);
+                    if (third >= 0 && line.startsWith("TRANSFER,")) {
+                        int to = workerFor(line, third + 1, line.length());
+                        if (to != w) {
+                            // Both sides must be queued now: either worker may wait for the other here
+                            Handoff handoff = new Handoff(line, w);
+                            pending[w][fill[w]++] = handoff;
+                            pending[to][fill[to]++] = handoff;
+                            flush(queues, pending, fill, w);
+                            flush(queues, pending, fill, to);
+                            continue;
+                        }
+                    }
+                    pending[w][fill[w]++] = line;
+                    if (fill[w] == BATCH_SIZE) {
+                        queues.get(w).put(pending[w]);
+                        pending[w] = new Object[BATCH_SIZE];
+                        fill[w] = 0;
+                    }
+                }
+            } finally {
+                for (int w = 0; w < workers; w++) {
+                    if (fill[w] > 0) {
+                        queues.get(w).put(Arrays.copyOf(pending[w], fill[w]));
+                    }
+                    queues.get(w).put(POISON);
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            }
+            bank.sync();
+            
+            Report total = new Report();
+            total.malformed = unroutable;
+            total.lines = unroutable;
+            for (Report partial : partials) {
+                for (int i = 0; i < total.byResult.length; i++) {
+                    total.byResult[i] += partial.byResult[i];
+                }
+                total.malformed += partial.malformed;
+                total.failed += partial.failed;
+                if (total.firstFailure == null) {
+                    total.firstFailure = partial.firstFailure;
+                }
+                total.lines += partial.lines;
+            }
+            total.nanos = System.nanoTime() - start;
+            return total;
+        }
+        
+        private int workerFor(String line, int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + line.charAt(i);
+            }
+            return (hash & Integer.MAX_VALUE) % workers;
+        }
+        
+        private static void flush(List<ArrayBlockingQueue<Object[]>> queues, Object[][] pending, int[] fill, int w)
+                throws InterruptedException {
+            if (fill[w] > 0) {
+                queues.get(w).put(Arrays.copyOf(pending[w], fill[w]));
+                fill[w] = 0;
+            }
+        }
+        
+        private void work(int worker, ArrayBlockingQueue<Object[]> queue, Report report) {
+            try {
+                Object[] batch;
+                while ((batch = queue.take()) != POISON) {
+                    int lines = 0;
+                    for (Object item : batch) {
+                        if (item instanceof String) {
+                            applySafely((String) item, report);
+                            lines++;
+                            continue;
+                        }
+                        Handoff handoff = (Handoff) item;
+                        if (handoff.sourceWorker == worker) {
+                            handoff.arrived.await();
+                            try {
+                                applySafely(handoff.line, report);
+                            } finally {
+                                handoff.done.countDown();
+                            }
+                            lines++;
+                        } else {
+                            handoff.arrived.countDown();
+                            handoff.done.await();
+                        }
+                    }
+                    report.lines += lines;
+                    long done = processed.addAndGet(lines);
+                    if (done / REPORT_EVERY != (done - lines) / REPORT_EVERY) {
+                        reportProgress(done);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        private void applySafely(String line, Report report) {
+            try {
+                apply(line, report);
+            } catch (RuntimeException e) {
+                // One bad line must not kill the worker - the reader would block on its full queue
+                report.failed++;
+                if (report.firstFailure == null) {
+                    report.firstFailure = e.toString();
+                }
+            }
+        }
+        
+        private synchronized void reportProgress(long done) {
+            long now = System.nanoTime();
+            long rate = (done - lastReportCount) * 1_000_000_000L / Math.max(1, now - lastReportNanos);
+            System.out.printf("  ... %,d operations processed (%,d ops/sec)%n", done, rate);
+            lastReportNanos = now;
+            lastReportCount = done;
+        }
+        
+        private void apply(String line, Report report) {
+            int first = line.indexOf(',');
+            int second = line.indexOf(',', first + 1);
+            if (second < 0) {
+                report.malformed++;
+                return;
+            }
+            int third = line.indexOf(',', second + 1);
+            int amountEnd = third < 0 ? line.length() : third;
+            long cents = Money.parseCents(line, second + 1, amountEnd);
+            String account = line.substring(first + 1, second);
+            String op = line.substring(0, first);
+            if (cents < 0) {
+                report.malformed++;
+                return;
+            }
+            Result result;
+            switch (op) {
+                case "CREATE":
+                    if (third < 0) {
+                        report.malformed++;
+                        return;
+                    }
+                    result = bank.open(account, line.substring(third + 1), cents);
+                    break;
+                case "DEPOSIT":
+                    result = bank.deposit(account, cents);
+                    break;
+                case "WITHDRAW":
+                    result = bank.withdraw(account, cents);
+                    break;
+                case "TRANSFER":
+                    if (third < 0) {
+                        report.malformed++;
+                        return;
+                    }
+                    result = bank.transfer(account, line.substring(third + 1), cents);
+                    break;
+                default:
+                    report.malformed++;
+                    return;
+            }
+            report.byResult[result.ordinal()]++;
+        }
+    }
+    
+    /**
+     * Line-based TCP front end for a Bank. One request per line, one reply per line:
+     *   OPEN account amount holder name   -> OK balance | ERR reason
+     *   DEPOSIT account amount            -> OK balance | ERR reason
+     *   WITHDRAW account amount           -> OK balance | ERR reason
+     *   TRANSFER from to amount           -> OK balance | ERR reason
+     *   BALANCE account                   -> OK balance | ERR reason
+     *   QUIT
+     * Amounts are dollars ("12.34"). Every connection gets its own thread -
+     * a virtual thread on JDK 21+, where tens of thousands of idle sessions
+     * cost little more than their sockets, and a platform thread otherwise.
+     * Changes are acknowledged only after the journal group commit.
+     */
+    static final class BankServer implements AutoCloseable {
+        private final Bank bank;
+        private final ServerSocket serverSocket;
+        private final ExecutorService sessions;
+        private final Thread acceptor;
+        private final AtomicLong openSessions = new AtomicLong();
+        
+        BankServer(Bank bank, int port) throws IOException {
+            this.bank = bank;
+            this.serverSocket = new ServerSocket(port, 4096);
+            this.sessions = perTaskExecutor("bank-session");
+            this.acceptor = new Thread(this::acceptLoop, "bank-acceptor");
+            acceptor.start();
+        }
+        
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+        
+        /**
+         * One thread per task: virtual threads when the runtime has them (JDK 21+)
+         */
+        static ExecutorService perTaskExecutor(String name) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                AtomicLong counter = new AtomicLong();
+                return Executors.newCachedThreadPool(task -> {
+                    Thread thread = new Thread(null, task, name + "-" + counter.incrementAndGet(), 256 * 1024);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    sessions.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        System.out.println("✗ Error: accept failed - " + e.getMessage());
+                    }
+                }
+            }
+        }
+        
+        private void serve(Socket socket) {
+            openSessions.incrementAndGet();
+            try (Socket client = socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))) {
+                client.setTcpNoDelay(true);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.equals("QUIT")) {
+                        break;
+                    }
+                    out.print(handle(line));
+                    out.print('\n');
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Client went away; nothing to clean up beyond the socket
+            } finally {
+                openSessions.decrementAndGet();
+            }
+        }
+        
+        /**
+         * Execute one request line and return the reply (without newline)
+         */
+        String handle(String line) {
+            String[] parts = line.trim().split(" +", 4);
+            Result result;
+            String account = parts.length > 1 ? parts[1] : "";
+            switch (parts[0]) {
+                case "OPEN": {
+                    long cents = parts.length > 2 ? parseAmount(parts[2]) : -1;
+                    if (parts.length < 4 || cents < 0) {
+                        return "ERR MALFORMED";
+                    }
+                    result = bank.open(account, parts[3], cents);
+                    break;
+                }
+                case "DEPOSIT":
+                case "WITHDRAW": {
+                    long cents = parts.length == 3 ? parseAmount(parts[2]) : -1;
+                    if (cents < 0) {
+                        return "ERR MALFORMED";
+                    }
+                    result = parts[0].equals("DEPOSIT") ? bank.deposit(account, cents) : bank.withdraw(account, cents);
+                    break;
+                }
+                case "TRANSFER": {
+                    long cents = parts.length == 4 ? parseAmount(parts[3]) : -1;
+                    if (cents < 0) {
+                        return "ERR MALFORMED";
+                    }
+                    result = bank.transfer(account, parts[2], cents);
+                    break;
+                }
+                case "BALANCE":
+                    result = parts.length == 2 ? Result.OK : null;
+                    if (result == null) {
+                        return "ERR MALFORMED";
+                    }
+                    break;
+                default:
+                    return "ERR UNKNOWN_COMMAND";
+            }
+            if (result != Result.OK) {
+                return "ERR " + result;
+            }
+            if (!parts[0].equals("BALANCE")) {
+                bank.sync();    // acknowledge only durable changes; concurrent sessions share the fsync
+            }
+            // Only BALANCE is a lookup; reading the map directly keeps the other replies out of the LOOKUP metrics
+            Account target = parts[0].equals("BALANCE") ? bank.getAccount(account) : bank.accounts.get(account);
+            return target == null ? "ERR " + Result.ACCOUNT_NOT_FOUND : "OK " + Money.format(target.getBalanceCents());
+        }
+        
+        private static long parseAmount(String text) {
+            return Money.parseCents(text, 0, text.length());
+        }
+        
+        long openSessions() {
+            return openSessions.get();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            sessions.shutdownNow();
+            try {
+                acceptor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Loopback load generator for BankServer:
+     *   java BankAccountSystem --load host port sessions requestsPerSession
+     * Opens all sessions first and holds them open, then every session opens
+     * its own account and alternates deposits, withdrawals and balance checks.
+     */
+    static final class LoadGenerator {
+        private LoadGenerator() {}
+        
+        static void run(String host, int port, int sessionCount, int requestsPerSession) throws InterruptedException {
+            ExecutorService executor = BankServer.perTaskExecutor("bank-load");
+            CountDownLatch connected = new CountDownLatch(sessionCount);
+            CountDownLatch go = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(sessionCount);
+            LongAdder requests = new LongAdder();
+            LongAdder errors = new LongAdder();
+            LongAdder failedSessions = new LongAdder();    // could not connect
+            LongAdder droppedSessions = new LongAdder();   // connected, then lost the connection
+            LatencyHistogram latency = new LatencyHistogram();
+            String run = Long.toString(System.currentTimeMillis(), 36);
+            
+            for (int i = 0; i < sessionCount; i++) {
+                String account = "LG-" + run + "-" + i;
+                executor.execute(() -> {
+                    boolean connecting = true;   // connected has not been counted down for this session yet
+                    try (Socket socket = new Socket(host, port);
+                         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                         PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+                        socket.setTcpNoDelay(true);
+                        connecting = false;
+                        connected.countDown();
+                        go.await();
+                        call(out, in, "OPEN " + account + " 100.00 Load Test", requests, errors, latency);
+                        for (int r = 0; r < requestsPerSession; r++) {
+                            String request;
+                            switch (r % 3) {
+                                case 0: request = "DEPOSIT " + account + " 1.00"; break;
+                                case 1: request = "WITHDRAW " + account + " 0.50"; break;
+                                default: request = "BALANCE " + account;
+                            }
+                            call(out, in, request, requests, errors, latency);
+                        }
+                        out.print("QUIT\n");
+                        out.flush();
+                    } catch (IOException e) {
+                        (connecting ? failedSessions : droppedSessions).increment();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        if (connecting) {
+                            connected.countDown();
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+            connected.await();
+            System.out.printf("%,d sessions connected (%,d failed to connect)%n", sessionCount - failedSessions.sum(),
+                              failedSessions.sum());
+            long start = System.nanoTime();
+            go.countDown();
+            done.await();
+            long nanos = System.nanoTime() - start;
+            executor.shutdown();
+            
+            System.out.println("\n" + "=".repeat(50));
+            System.out.println("LOAD TEST SUMMARY");
+            System.out.println("-".repeat(50));
+            System.out.printf("Requests:    %,d (%,d errors)%n", requests.sum(), errors.sum());
+            if (droppedSessions.sum() > 0) {
+                System.out.printf("Dropped:     %,d sessions lost their connection%n", droppedSessions.sum());
+            }
+            System.out.printf("Throughput:  %,d requests/sec%n", requests.sum() * 1_000_000_000L / Math.max(1, nanos));
+            System.out.printf("Latency:     p50 %,d us, p99 %,d us, p99.9 %,d us%n", latency.percentile(50) / 1000,
+                              latency.percentile(99) / 1000, latency.percentile(99.9) / 1000);
+            System.out.println("=".repeat(50));
+        }
+        
+        private static void call(PrintWriter out, BufferedReader in, String request, LongAdder requests,
+                                 LongAdder errors, LatencyHistogram latency) throws IOException {
+            long begin = System.nanoTime();
+            out.print(request);
+            out.print('\n');
+            out.flush();
+            String reply = in.readLine();
+            latency.record(System.nanoTime() - begin);
+            requests.increment();
+            if (reply == null) {
+                throw new IOException("Server closed the connection");
+            }
+            if (!reply.startsWith("OK")) {
+                errors.increment();
+            }
+        }
+    }
+    
+    /**
+     * Micro-benchmarks for the ledger hot paths, run from the command line:
+     *   java BankAccountSystem --bench [name|all] [maxThreads] [accounts] [history]
+     * name is deposit, withdraw, lookup, transfer, display or all. Each
+     * benchmark warms up, then runs with 1, 2, 4 ... maxThreads threads and
+     * reports throughput, bytes allocated per operation and sampled latency
+     * percentiles. accounts and history size the bank (default 100000 accounts
+     * with 16 past transactions each), so ledger regressions show up at
+     * realistic sizes.
+     */
+    static final class Benchmarks {
+        private static final long WARMUP_MILLIS = 500;
+        private static final long RUN_MILLIS = 1000;
+        private static final int SAMPLE_EVERY = 16;         // time one op in 16 for percentiles
+        private static final int MAX_SAMPLES = 1 << 18;     // per thread
+        private static final int HOT_ACCOUNTS = 8;
+        private static final long START_BALANCE = 1_000_000_000_00L;
+        
+        /**
+         * One benchmarked operation; called repeatedly from every worker thread
+         */
+        interface Op {
+            void run(ThreadLocalRandom random);
+        }
+        
+        /**
+         * Result of one run
+         */
+        static final class Measurement {
+            long opsPerSec;
+            long bytesPerOp = -1;   // -1 when the JVM cannot report allocation
+            long p50;
+            long p99;
+            long p999;
+            
+            @Override
+            public String toString() {
+                return String.format("%,14d %10s %9d %9d %9d", opsPerSec,
+                                     bytesPerOp < 0 ? "n/a" : String.valueOf(bytesPerOp), p50, p99, p999);
+            }
+        }
+        
+        private Benchmarks() {}
+        
+        static void run(String[] args) throws InterruptedException {
+            String which = args.length > 1 ? args[1] : "all";
+            int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            int accounts = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+            int history = args.length > 4 ? Integer.parseInt(args[4]) : 16;
+            boolean all = which.equals("all");
+            boolean known = false;
+            
+            System.out.printf("%nBENCHMARKS - %,d accounts, %,d history entries each%n", accounts, history);
+            if (all || which.equals("deposit")) {
+                known = true;
+                Bank bank = newBank(accounts, history);
+                String[] names = names(accounts);
+                report("deposit", maxThreads, random -> bank.deposit(names[random.nextInt(names.length)], 1));
+            }
+            if (all || which.equals("withdraw")) {
+                known = true;
+                Bank bank = newBank(accounts, history);
+                String[] names = names(accounts);
+                report("withdraw", maxThreads, random -> bank.withdraw(names[random.nextInt(names.length)], 1));
+            }
+            if (all || which.equals("lookup")) {
+                known = true;
+                Bank bank = newBank(accounts, history);
+                String[] names = names(accounts);
+                report("lookup", maxThreads, random -> bank.getAccount(names[random.nextInt(names.length)]));
+            }
+            if (all || which.equals("transfer")) {
+                known = true;
+                transferContention(maxThreads, accounts, history);
+            }
+            if (all || which.equals("accrual")) {
+                known = true;
+                Bank bank = newBank(accounts, history);
+                AccrualPolicy policy = new AccrualPolicy(250, 500, START_BALANCE * 2);
+                for (int round = 0; round < 3; round++) {
+                    AccrualReport report = bank.accrue(policy);
+                    System.out.printf("%naccrual round %d: %,d accounts in %,d ms (%,d accounts/sec)%n", round + 1,
+                                      report.accounts.sum(), report.nanos / 1_000_000,
+                                      report.nanos == 0 ? 0 : report.accounts.sum() * 1_000_000_000L / report.nanos);
+                }
+            }
+            if (all || which.equals("display")) {
+                known = true;
+                Bank bank = newBank(accounts, history);
+                PrintStream console = System.out;
+                try {
+                    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                    Measurement m = measure(1, random -> bank.displayAllAccounts());
+                    console.printf("%ndisplayAllAccounts (%,d accounts): %,d calls/sec, %,d bytes/call%n",
+                                   accounts, m.opsPerSec, m.bytesPerOp);
+                } finally {
+                    System.setOut(console);
+                }
+            }
+            if (!known) {
+                System.out.println("✗ Unknown benchmark: " + which);
+            }
+        }
+        
+        /**
+         * Transfer throughput on a small hot set (heavy lock contention)
+         * and on the full cold set (almost none)
+         */
+        static void transferContention(int maxThreads, int accounts, int history) throws InterruptedException {
+            Bank hot = newBank(HOT_ACCOUNTS, history);
+            String[] hotNames = names(HOT_ACCOUNTS);
+            report("transfer, hot set of " + HOT_ACCOUNTS, maxThreads, random -> transferBetween(hot, hotNames, random));
+            Bank cold = newBank(accounts, history);
+            String[] coldNames = names(accounts);
+            report("transfer, cold set of " + accounts, maxThreads, random -> transferBetween(cold, coldNames, random));
+        }
+        
+        private static void transferBetween(Bank bank, String[] names, ThreadLocalRandom random) {
+            int from = random.nextInt(names.length);
+            int to = (from + 1 + random.nextInt(names.length - 1)) % names.length;
+            bank.transfer(names[from], names[to], 1);
+        }
+        
+        private static void report(String title, int maxThreads, Op op) throws InterruptedException {
+            System.out.println("\n" + title);
+            System.out.printf("%-8s %14s %10s %9s %9s %9s%n", "threads", "ops/sec", "bytes/op", "p50 ns", "p99 ns", "p99.9 ns");
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                System.out.printf("%-8d %s%n", threads, measure(threads, op));
+            }
+        }
+        
+        /**
+         * Warm up, then run op on the given number of threads for RUN_MILLIS
+         */
+        static Measurement measure(int threads, Op op) throws InterruptedException {
+            runFor(threads, op, WARMUP_MILLIS, null);
+            return runFor(threads, op, RUN_MILLIS, new Measurement());
+        }
+        
+        private static Measurement runFor(int threads, Op op, long millis, Measurement result)
+                throws InterruptedException {
+            com.sun.management.ThreadMXBean allocation = allocationBean();
+            long[] counts = new long[threads];
+            long[] allocated = new long[threads];
+            long[][] samples = new long[threads][];
+            int[] sampleCounts = new int[threads];
+            Thread[] workers = new Thread[threads];
+            CountDownLatch start = new CountDownLatch(1);
+            long[] deadline = new long[1];
+            for (int t = 0; t < threads; t++) {
+                int slot = t;
+                workers[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long[] latencies = new long[MAX_SAMPLES];
+                    int sampled = 0;
+                    long ops = 0;
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long bytesBefore = allocation == null ? 0 : allocation.getCurrentThreadAllocatedBytes();
+                    long end = deadline[0];
+                    while ((ops & 255) != 0 || System.nanoTime() < end) {
+                        if (ops % SAMPLE_EVERY == 0 && sampled < MAX_SAMPLES) {
+                            long begin = System.nanoTime();
+                            op.run(random);
+                            latencies[sampled++] = System.nanoTime() - begin;
+                        } else {
+                            op.run(random);
+                        }
+                        ops++;
+                    }
+                    allocated[slot] = allocation == null ? 0 : allocation.getCurrentThreadAllocatedBytes() - bytesBefore;
+                    counts[slot] = ops;
+                    samples[slot] = latencies;
+                    sampleCounts[slot] = sampled;
+                });
+                workers[t].start();
+            }
+            deadline[0] = System.nanoTime() + millis * 1_000_000;
+            start.countDown();
+            long totalOps = 0;
+            long totalBytes = 0;
+            int totalSamples = 0;
+            for (int t = 0; t < threads; t++) {
+                workers[t].join();
+                totalOps += counts[t];
+                totalBytes += allocated[t];
+                totalSamples += sampleCounts[t];
+            }
+            if (result == null) {
+                return null;
+            }
+            
+            long[] merged = new long[totalSamples];
+            int at = 0;
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(samples[t], 0, merged, at, sampleCounts[t]);
+                at += sampleCounts[t];
+            }
+            Arrays.sort(merged);
+            result.opsPerSec = totalOps * 1000 / millis;
+            if (allocation != null && totalOps > 0) {
+                result.bytesPerOp = totalBytes / totalOps;
+            }
+            result.p50 = percentile(merged, 0.50);
+            result.p99 = percentile(merged, 0.99);
+            result.p999 = percentile(merged, 0.999);
+            return result;
+        }
+        
+        private static long percentile(long[] sorted, double fraction) {
+            return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+        }
+        
+        private static com.sun.management.ThreadMXBean allocationBean() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean;
                 }
             }
+            return null;
+        }
+        
+        /**
+         * In-memory bank with accountCount accounts, each carrying history past transactions
+         */
+        static Bank newBank(int accountCount, int history) {
+            Bank bank = new Bank();
+            String[] names = names(accountCount);
+            for (int i = 0; i < accountCount; i++) {
+                bank.openAccount(names[i], "Holder " + i, START_BALANCE);
+                for (int h = 0; h < history; h++) {
+                    bank.deposit(names[i], 1);
+                }
+            }
+            return bank;
+        }
+        
+        static String[] names(int accountCount) {
+            String[] names = new String[accountCount];
+            for (int i = 0; i < accountCount; i++) {
+                names[i] = "ACC" + i;
+            }
+            return names;
         }
     }
     
     /**
      * MAIN METHOD - Program entry point
      */
-    public static void main(String[] args) {
-        // Create bank instance and start the system
-        Bank bank = new Bank();
-        bank.showMainMenu();
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0 && args[0].equals("--bench")) {
+            Benchmarks.run(args);
+            return;
+        }
+        if (args.length > 2 && args[0].equals("--load")) {
+            // java BankAccountSystem --load host port [sessions] [requestsPerSession]
+            LoadGenerator.run(args[1], Integer.parseInt(args[2]),
+                              args.length > 3 ? Integer.parseInt(args[3]) : 1000,
+                              args.length > 4 ? Integer.parseInt(args[4]) : 100);
+            return;
+        }
+        
+        // Create bank instance (persisted under ./bank-data)
+        Bank bank = openBank();
+        bank.metrics().registerMBean();
+        long reportSeconds = Long.getLong("bank.metrics.seconds", 0);
+        if (reportSeconds > 0) {
+            bank.metrics().startReporting(reportSeconds);
+        }
+        AccrualPolicy accrual = AccrualPolicy.fromSystemProperties();
+        if (args.length > 0 && args[0].equals("--accrue")) {
+            // One-off end-of-day run closing today: java -Dbank.interest.bps=250 BankAccountSystem --accrue
+            if (accrual == null) {
+                System.out.println("✗ Error: set -Dbank.interest.bps or -Dbank.fee.cents to run accrual");
+            } else {
+                AccrualReport report = bank.accrueDay(accrual, LocalDate.now());
+                if (report == null) {
+                    System.out.println("✗ Error: " + LocalDate.now() + " has already been accrued");
+                } else {
+                    report.print();
+                }
+            }
+            bank.close();
+            return;
+        }
+        if (accrual != null) {
+            bank.scheduleAccrual(accrual);
+        }
+        if (args.length > 1 && args[0].equals("--batch")) {
+            // Headless mode: java BankAccountSystem --batch transactions.csv [workers]
+            int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            try {
+                new BatchIngestor(bank, workers).ingest(Paths.get(args[1])).print();
+                System.out.print("\n" + bank.metrics().getReport());
+            } catch (IOException e) {
+                System.out.println("✗ Error: cannot read batch file - " + e.getMessage());
+            }
+        } else if (args.length > 0 && args[0].equals("--serve")) {
+            // Server mode: java BankAccountSystem --serve [port]
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+            try (BankServer server = new BankServer(bank, port)) {
+                System.out.println("🏦 Serving on port " + server.port() + " - press Enter to stop");
+                new Scanner(System.in).nextLine();
+            } catch (IOException e) {
+                System.out.println("✗ Error: cannot run server - " + e.getMessage());
+            }
+        } else {
+            bank.showMainMenu();
+        }
+        bank.close();
+    }
+    
+    private static Bank openBank() {
+        try {
+            return new Bank(Paths.get("bank-data"));
+        } catch (IOException e) {
+            System.out.println("✗ Error: cannot open bank data (" + e.getMessage() + ") - running in memory only");
+            return new Bank();
+        }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,112 +1,2331 @@
 package com.elevate.task3;
 
 //LibraryManagementSystem.java
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+//AuthorDictionary Class
+//Author names are shared by thousands of titles, so each distinct name is
+//stored once and books keep a small int id; getAuthor is an array read.
+//A book with no author (null or empty) gets the reserved id NO_AUTHOR.
+final class AuthorDictionary {
+ static final int NO_AUTHOR = 0;
+ 
+ private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+ private static volatile String[] names = new String[1024];
+ private static int size = 1;   // guarded by the class lock
+ 
+ static {
+     names[NO_AUTHOR] = "";
+ }
+ 
+ private AuthorDictionary() {
+ }
+ 
+ static int idOf(String name) {
+     if (name == null || name.isEmpty()) {
+         return NO_AUTHOR;
+     }
+     Integer id = IDS.get(name);
+     return id != null ? id : add(name);
+ }
+ 
+ private static synchronized int add(String name) {
+     Integer id = IDS.get(name);
+     if (id != null) {
+         return id;
+     }
+     String[] current = names;
+     if (size == current.length) {
+         current = Arrays.copyOf(current, size * 2);
+     }
+     current[size] = name;
+     names = current;   // publish the name before its id
+     IDS.put(name, size);
+     return size++;
+ }
+ 
+ static String name(int id) {
+     return names[id];
+ }
+}
 
 //Book Class
+//One Book is one title with any number of copies, laid out compactly:
+//the author is an id into AuthorDictionary, a numeric ISBN (optionally
+//ending in X) is packed into a long, and the copy counts share one int
+//(total << 16 | free) changed by compare-and-set through a field updater,
+//so two threads can never both take the last copy. Readers waiting for a
+//title queue on a lock-free FIFO, created on the first reservation; a
+//returned copy goes straight to the head of the queue instead of back on
+//the shelf.
 class Book {
- private String title;
- private String author;
- private String isbn;
- private boolean isAvailable;
+ static final int MAX_COPIES = 0xFFFF;
+ private static final long NOT_PACKED = -1;
+ private static final int LENGTH_SHIFT = 57;
+ private static final long X_FLAG = 1L << 62;
+ private static final long DIGITS_MASK = (1L << LENGTH_SHIFT) - 1;
+ private static final AtomicIntegerFieldUpdater<Book> COPIES =
+     AtomicIntegerFieldUpdater.newUpdater(Book.class, "copies");
+ @SuppressWarnings("rawtypes")
+ private static final AtomicReferenceFieldUpdater<Book, Queue> RESERVATIONS =
+     AtomicReferenceFieldUpdater.newUpdater(Book.class, Queue.class, "reservations");
+ 
+ private final String title;
+ private final int authorId;
+ private final long isbnCode;       // packed ISBN, or NOT_PACKED when isbnText holds it
+ private final String isbnText;
+ private volatile int copies;       // total << 16 | available
+ private volatile Queue<User> reservations;
+ private volatile AvailabilityIndex availabilityIndex;   // set while the book is in a library
+ private volatile int slot = -1;
  
  public Book(String title, String author, String isbn) {
+     this(title, author, isbn, 1);
+ }
+ 
+ public Book(String title, String author, String isbn, int copies) {
+     if (copies < 0 || copies > MAX_COPIES) {
+         throw new IllegalArgumentException("copies must be between 0 and " + MAX_COPIES);
+     }
      this.title = title;
-     this.author = author;
-     this.isbn = isbn;
-     this.isAvailable = true;
+     this.authorId = AuthorDictionary.idOf(author);
+     this.isbnCode = pack(isbn);
+     this.isbnText = isbnCode == NOT_PACKED ? isbn : null;
+     this.copies = copies << 16 | copies;
  }
  
  public String getTitle() { return title; }
- public String getAuthor() { return author; }
- public String getIsbn() { return isbn; }
- public boolean isAvailable() { return isAvailable; }
- public void setAvailable(boolean available) { this.isAvailable = available; }
+ public String getAuthor() { return AuthorDictionary.name(authorId); }
+ public String getIsbn() { return isbnCode == NOT_PACKED ? isbnText : unpack(isbnCode); }
+ public int getTotalCopies() { return copies >>> 16; }
+ public int getAvailableCopies() { return copies & 0xFFFF; }
+ public int getReservationCount() {
+     Queue<User> queue = reservations;
+     return queue == null ? 0 : queue.size();
+ }
+ public boolean isAvailable() { return (copies & 0xFFFF) > 0; }
+ 
+ //Key for maps of books by ISBN: the packed Long, or the ISBN text
+ Object isbnKey() {
+     return isbnCode == NOT_PACKED ? isbnText : Long.valueOf(isbnCode);
+ }
+ 
+ static Object isbnKey(String isbn) {
+     long code = pack(isbn);
+     return code == NOT_PACKED ? isbn : Long.valueOf(code);
+ }
+ 
+ //Up to 17 characters of digits, the last of which may be X:
+ //[X flag:1][length:5][digits as a number:57]
+ private static long pack(String isbn) {
+     int length = isbn.length();
+     if (length == 0 || length > 17) {
+         return NOT_PACKED;
+     }
+     boolean x = isbn.charAt(length - 1) == 'X';
+     long digits = 0;
+     for (int i = 0, end = x ? length - 1 : length; i < end; i++) {
+         int digit = isbn.charAt(i) - '0';
+         if (digit < 0 || digit > 9) {
+             return NOT_PACKED;
+         }
+         digits = digits * 10 + digit;
+     }
+     return (x ? X_FLAG : 0) | (long) length << LENGTH_SHIFT | digits;
+ }
+ 
+ private static String unpack(long code) {
+     char[] chars = new char[(int) (code >>> LENGTH_SHIFT) & 31];
+     int i = chars.length - 1;
+     if ((code & X_FLAG) != 0) {
+         chars[i--] = 'X';
+     }
+     for (long digits = code & DIGITS_MASK; i >= 0; i--, digits /= 10) {
+         chars[i] = (char) ('0' + digits % 10);
+     }
+     return new String(chars);
+ }
+ 
+ //Take a copy off the shelf; false if none is free or readers are queued for it
+ public boolean tryCheckout() {
+     Queue<User> queue = reservations;
+     return (queue == null || queue.isEmpty()) && takeCopy();
+ }
+ 
+ //Bring a copy back; it goes to the first reservation if there is one.
+ //False if every copy is already on the shelf.
+ public boolean checkIn() {
+     int current;
+     do {
+         current = copies;
+         if ((current & 0xFFFF) >= current >>> 16) {
+             return false;
+         }
+     } while (!COPIES.compareAndSet(this, current, current + 1));
+     if ((current & 0xFFFF) == 0) {
+         availabilityChanged();
+     }
+     fillReservations();
+     return true;
+ }
+ 
+ public void addCopies(int added) {
+     int current;
+     do {
+         current = copies;
+         if ((current >>> 16) + added > MAX_COPIES) {
+             throw new IllegalArgumentException("a title can have at most " + MAX_COPIES + " copies");
+         }
+     } while (!COPIES.compareAndSet(this, current, current + (added << 16) + added));
+     if ((current & 0xFFFF) == 0) {
+         availabilityChanged();
+     }
+     fillReservations();
+ }
+ 
+ //Queue the user for the next free copy. Returns true if a copy was free
+ //and has already been issued to them.
+ boolean reserve(User user) {
+     if (user.holds(this)) {
+         return false;
+     }
+     if (tryCheckout()) {
+         if (user.loanGranted(this)) {
+             return true;
+         }
+         // A checkout on another thread gave them this title first
+         releaseCopy();
+         fillReservations();
+         return false;
+     }
+     Queue<User> queue = reservations;
+     if (queue == null) {
+         RESERVATIONS.compareAndSet(this, null, new ConcurrentLinkedQueue<User>());
+         queue = reservations;
+     }
+     if (!queue.contains(user)) {
+         queue.add(user);
+     }
+     // A copy may have come back between the failed take and the enqueue
+     fillReservations();
+     return !queue.contains(user);
+ }
+ 
+ boolean cancelReservation(User user) {
+     Queue<User> queue = reservations;
+     return queue != null && queue.remove(user);
+ }
+ 
+ User nextReservation() {
+     Queue<User> queue = reservations;
+     return queue == null ? null : queue.peek();
+ }
+ 
+ //Hand free copies to waiting readers, oldest first. Both check-in and
+ //reserve call this after their own change, so a copy and a waiter that
+ //arrive at the same moment always meet.
+ private void fillReservations() {
+     Queue<User> queue = reservations;
+     if (queue == null) {
+         return;
+     }
+     while (!queue.isEmpty() && takeCopy()) {
+         User next = queue.poll();
+         // A reader who already holds the title is dropped and the copy offered to the next
+         if (next == null || !next.loanGranted(this)) {
+             releaseCopy();
+         }
+     }
+ }
+ 
+ //Put back a copy taken by takeCopy that nobody received
+ private void releaseCopy() {
+     if ((COPIES.getAndIncrement(this) & 0xFFFF) == 0) {
+         availabilityChanged();
+     }
+ }
+ 
+ private boolean takeCopy() {
+     int current;
+     do {
+         current = copies;
+         if ((current & 0xFFFF) == 0) {
+             return false;
+         }
+     } while (!COPIES.compareAndSet(this, current, current - 1));
+     if ((current & 0xFFFF) == 1) {
+         availabilityChanged();
+     }
+     return true;
+ }
+ 
+ int getSlot() { return slot; }
+ 
+ void attach(AvailabilityIndex index, int slot) {
+     this.availabilityIndex = index;
+     this.slot = slot;
+ }
+ 
+ private void availabilityChanged() {
+     AvailabilityIndex index = availabilityIndex;
+     if (index != null) {
+         index.refresh(slot);
+     }
+ }
  
  public void displayInfo() {
+     int current = copies;
+     int waiting = getReservationCount();
      System.out.println("Title: " + title + 
-                      ", Author: " + author + 
-                      ", ISBN: " + isbn + 
-                      ", Available: " + (isAvailable ? "Yes" : "No"));
+                      ", Author: " + getAuthor() + 
+                      ", ISBN: " + getIsbn() + 
+                      ", Available: " + ((current & 0xFFFF) > 0 ? "Yes" : "No") +
+                      (current >>> 16 > 1 ? " (" + (current & 0xFFFF) + " of " + (current >>> 16) + " copies)" : "") +
+                      (waiting == 0 ? "" : ", Reservations: " + waiting));
+ }
+}
+
+//Loan Class
+//One copy of a title lent to one user. Loans order by due date (ties broken
+//by a sequence number), which is what the library's overdue index sorts on.
+//A loan is open, overdue once a sweep has passed its due date, or closed;
+//its fine grows by a daily rate for every started day late, up to a cap,
+//and is worked out from the due date when asked rather than posted daily.
+class Loan implements Comparable<Loan> {
+ static final long LOAN_PERIOD_MILLIS = TimeUnit.DAYS.toMillis(14);
+ static final long DAILY_FINE_CENTS = Long.getLong("library.fine.daily.cents", 25);
+ static final long MAX_FINE_CENTS = Long.getLong("library.fine.max.cents", 2000);
+ static final int OPEN = 0;
+ static final int OVERDUE = 1;
+ static final int CLOSED = 2;
+ private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+ private static final AtomicLong SEQUENCE = new AtomicLong();
+ private static final AtomicIntegerFieldUpdater<Loan> STATE =
+     AtomicIntegerFieldUpdater.newUpdater(Loan.class, "state");
+ 
+ private final Book book;
+ private final User user;
+ private final long borrowedAt;
+ private final long dueAt;
+ private final long sequence;
+ private volatile int state = OPEN;
+ 
+ public Loan(Book book, User user, long borrowedAt, long dueAt) {
+     this.book = book;
+     this.user = user;
+     this.borrowedAt = borrowedAt;
+     this.dueAt = dueAt;
+     this.sequence = SEQUENCE.incrementAndGet();
+ }
+ 
+ //Search key that sorts before every real loan due at the same time
+ private Loan(long dueAt) {
+     this.book = null;
+     this.user = null;
+     this.borrowedAt = 0;
+     this.dueAt = dueAt;
+     this.sequence = 0;
+ }
+ 
+ static Loan dueAt(long time) {
+     return new Loan(time);
+ }
+ 
+ public Book getBook() { return book; }
+ public User getUser() { return user; }
+ public long getBorrowedAt() { return borrowedAt; }
+ public long getDueAt() { return dueAt; }
+ public boolean isOverdue() { return state == OVERDUE; }
+ 
+ public LocalDate getDueDate() {
+     return Instant.ofEpochMilli(dueAt).atZone(ZoneId.systemDefault()).toLocalDate();
+ }
+ 
+ //Fine in cents if the book came back at the given time
+ public long fineAt(long now) {
+     if (now <= dueAt) {
+         return 0;
+     }
+     long daysLate = (now - dueAt + DAY_MILLIS - 1) / DAY_MILLIS;
+     return Math.min(MAX_FINE_CENTS, daysLate * DAILY_FINE_CENTS);
+ }
+ 
+ //First sweep past the due date wins; false if already overdue or returned
+ boolean markOverdue() {
+     return STATE.compareAndSet(this, OPEN, OVERDUE);
+ }
+ 
+ //Returns the state the loan was in
+ int close() {
+     return STATE.getAndSet(this, CLOSED);
+ }
+ 
+ @Override
+ public int compareTo(Loan other) {
+     int byDue = Long.compare(dueAt, other.dueAt);
+     return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+ }
+}
+
+//LoanLedger Class
+//Every open loan in the library, sorted by due date. The overdue sweep
+//remembers how far it got, so each run reads only the loans that fell due
+//since the last one - a range of the set - instead of visiting every user.
+//Returned loans leave the set, so nothing stale is ever walked.
+class LoanLedger {
+ private final ConcurrentSkipListSet<Loan> byDueDate = new ConcurrentSkipListSet<>();
+ private final AtomicInteger overdueCount = new AtomicInteger();
+ private long sweptTo = Long.MIN_VALUE;   // guarded by this; loans due before it are flagged
+ private final CirculationStats stats = new CirculationStats();
+ private volatile CatalogStore store;     // logs issues and returns when the library is persistent
+ 
+ void attach(CatalogStore store) {
+     this.store = store;
+ }
+ 
+ public CirculationStats stats() {
+     return stats;
+ }
+ 
+ void add(Loan loan) {
+     byDueDate.add(loan);
+     CatalogStore current = store;
+     if (current != null) {
+         current.loanOpened(loan);
+     }
+ }
+ 
+ void remove(Loan loan) {
+     byDueDate.remove(loan);
+     if (loan.close() == Loan.OVERDUE) {
+         overdueCount.decrementAndGet();
+     }
+     CatalogStore current = store;
+     if (current != null) {
+         current.loanClosed(loan);
+     }
+ }
+ 
+ void fined(User user, long cents) {
+     CatalogStore current = store;
+     if (current != null) {
+         current.fineCharged(user, cents);
+     }
+ }
+ 
+ public int count() {
+     return byDueDate.size();
+ }
+ 
+ //Loans flagged overdue by a sweep and not yet returned
+ public int overdueCount() {
+     return overdueCount.get();
+ }
+ 
+ //Loans due before the given time, earliest first (a live view)
+ public NavigableSet<Loan> overdue(long now) {
+     return byDueDate.headSet(Loan.dueAt(now), false);
+ }
+ 
+ /**
+  * Flag the loans that fell due since the last sweep and return them,
+  * earliest first. Costs O(log n) plus the number of newly expired loans.
+  */
+ public synchronized List<Loan> sweep(long now) {
+     List<Loan> expired = new ArrayList<>();
+     if (now <= sweptTo) {
+         return expired;
+     }
+     for (Loan loan : byDueDate.subSet(Loan.dueAt(sweptTo), true, Loan.dueAt(now), false)) {
+         if (loan.markOverdue()) {
+             overdueCount.incrementAndGet();
+             expired.add(loan);
+         }
+     }
+     sweptTo = now;
+     return expired;
  }
 }
 
 //User Class
+//Loans are kept in a map keyed by ISBN, so membership checks and returns
+//are constant-time however many books a user holds. A user holds at most
+//one copy of each title.
 class User {
  private String name;
  private String userId;
- private List<Book> borrowedBooks;
+ private final Map<Object, Loan> loans;   // by Book.isbnKey; guarded by this user's lock; borrow order
+ private long fines;                      // cents charged for late returns; guarded by this user's lock
+ private volatile LoanLedger ledger;      // the library's due-date index, once registered
+ 
+ public User(String name, String userId) {
+     this.name = name;
+     this.userId = userId;
+     this.loans = new LinkedHashMap<>();
+ }
+ 
+ public String getName() { return name; }
+ public String getUserId() { return userId; }
+ 
+ public synchronized List<Book> getBorrowedBooks() {
+     List<Book> books = new ArrayList<>(loans.size());
+     for (Loan loan : loans.values()) {
+         books.add(loan.getBook());
+     }
+     return books;
+ }
+ 
+ public synchronized List<Loan> getLoans() { return new ArrayList<>(loans.values()); }
+ 
+ //Fines charged for late returns plus what the books still out owe so far
+ public synchronized long getFinesOwed(long now) {
+     long owed = fines;
+     for (Loan loan : loans.values()) {
+         owed += loan.fineAt(now);
+     }
+     return owed;
+ }
+ 
+ public synchronized long getFinesCharged() { return fines; }
+ 
+ //Re-apply a saved fine when the library reopens
+ synchronized void restoreFine(long cents) {
+     fines += cents;
+ }
+ 
+ void attach(LoanLedger ledger) {
+     this.ledger = ledger;
+ }
+ 
+ //Quiet checkout: the book's CAS decides who gets the copy; only this
+ //user's own lock is held, to keep one copy per title per user
+ public synchronized boolean checkout(Book book) {
+     if (loans.containsKey(book.isbnKey()) || !book.tryCheckout()) {
+         return false;
+     }
+     loanGranted(book);
+     return true;
+ }
+ 
+ //Record a loan whose copy is already taken - a checkout or a filled reservation.
+ //False if the user already holds this title; the copy is then still the caller's.
+ synchronized boolean loanGranted(Book book) {
+     if (loans.containsKey(book.isbnKey())) {
+         return false;
+     }
+     long now = System.currentTimeMillis();
+     addLoan(new Loan(book, this, now, now + Loan.LOAN_PERIOD_MILLIS));
+     LoanLedger current = ledger;
+     if (current != null) {
+         current.stats().recordIssue(book, now);
+     }
+     return true;
+ }
+ 
+ //Re-create a saved loan with its original dates when the library reopens
+ synchronized boolean restoreLoan(Book book, long borrowedAt, long dueAt) {
+     if (loans.containsKey(book.isbnKey()) || !book.tryCheckout()) {
+         return false;
+     }
+     addLoan(new Loan(book, this, borrowedAt, dueAt));
+     return true;
+ }
+ 
+ private void addLoan(Loan loan) {
+     loans.put(loan.getBook().isbnKey(), loan);
+     LoanLedger current = ledger;
+     if (current != null) {
+         current.add(loan);
+     }
+ }
+ 
+ public synchronized boolean holds(Book book) {
+     return loans.containsKey(book.isbnKey());
+ }
+ 
+ public boolean checkin(Book book) {
+     return checkin(book, true);
+ }
+ 
+ //Replay a saved return; its fine, if any, is restored separately
+ boolean restoreReturn(Book book) {
+     return checkin(book, false);
+ }
+ 
+ private boolean checkin(Book book, boolean charge) {
+     synchronized (this) {
+         Loan loan = loans.remove(book.isbnKey());
+         if (loan == null) {
+             return false;
+         }
+         long now = System.currentTimeMillis();
+         long fine = charge ? loan.fineAt(now) : 0;
+         fines += fine;
+         LoanLedger current = ledger;
+         if (current != null) {
+             current.remove(loan);
+             if (fine > 0) {
+                 current.fined(this, fine);
+             }
+             if (charge) {
+                 current.stats().recordReturn(book, now);
+             }
+         }
+     }
+     book.checkIn();
+     return true;
+ }
+ 
+ public void borrowBook(Book book) {
+     if (holds(book)) {
+         System.out.println(name + " already has: " + book.getTitle());
+     } else if (checkout(book)) {
+         System.out.println(name + " successfully borrowed: " + book.getTitle());
+     } else {
+         System.out.println("Sorry, " + book.getTitle() + " is not available.");
+     }
+ }
+ 
+ public void returnBook(Book book) {
+     if (checkin(book)) {
+         System.out.println(name + " successfully returned: " + book.getTitle());
+     } else {
+         System.out.println("You didn't borrow this book: " + book.getTitle());
+     }
+ }
+ 
+ public synchronized void displayInfo() {
+     System.out.println("User: " + name + " (ID: " + userId + ")");
+     System.out.println("Borrowed Books:");
+     if (loans.isEmpty()) {
+         System.out.println("  No books borrowed");
+     } else {
+         for (Loan loan : loans.values()) {
+             System.out.println("  - " + loan.getBook().getTitle() + " (due " + loan.getDueDate() +
+                                (loan.isOverdue() ? ", OVERDUE" : "") + ")");
+         }
+     }
+     long owed = getFinesOwed(System.currentTimeMillis());
+     if (owed > 0) {
+         System.out.println("Fines owed: " + formatCents(owed));
+     }
+ }
+ 
+ static String formatCents(long cents) {
+     return String.format("$%d.%02d", cents / 100, cents % 100);
+ }
+}
+
+//SearchIndex Class
+//Inverted index over book titles and authors. Each term maps to the books
+//containing it with a weight (title hits count double), and the terms are
+//kept sorted so a prefix is a range of the term map - that range is both
+//the autocomplete answer and the match set for a half-typed last word.
+//Both levels are concurrent maps, so indexing needs no library-wide lock.
+class SearchIndex {
+ private static final int TITLE_WEIGHT = 2;
+ private static final int AUTHOR_WEIGHT = 1;
+ //A one-letter prefix can cover most of the catalog; a prefix-only search
+ //ranks at most this many of its books, taken in term order
+ private static final int MAX_PREFIX_CANDIDATES = 10_000;
+ 
+ private final ConcurrentSkipListMap<String, Map<Book, Integer>> postings = new ConcurrentSkipListMap<>();
+ 
+ public void add(Book book) {
+     for (Map.Entry<String, Integer> term : weights(book).entrySet()) {
+         Map<Book, Integer> books;
+         do {
+             books = postings.computeIfAbsent(term.getKey(), key -> new ConcurrentHashMap<>());
+             books.put(book, term.getValue());
+             // A concurrent remove may have dropped this posting list as empty; retry on the new one
+         } while (postings.get(term.getKey()) != books);
+     }
+ }
+ 
+ //Index many books at once: postings are grouped per term first, so a
+ //term shared across the batch costs one term-map lookup, not one per book
+ public void addAll(List<Book> batch) {
+     Map<String, Map<Book, Integer>> grouped = new HashMap<>();
+     for (Book book : batch) {
+         for (Map.Entry<String, Integer> term : weights(book).entrySet()) {
+             grouped.computeIfAbsent(term.getKey(), key -> new HashMap<>()).put(book, term.getValue());
+         }
+     }
+     for (Map.Entry<String, Map<Book, Integer>> term : grouped.entrySet()) {
+         Map<Book, Integer> books;
+         do {
+             books = postings.computeIfAbsent(term.getKey(), key -> new ConcurrentHashMap<>());
+             books.putAll(term.getValue());
+         } while (postings.get(term.getKey()) != books);
+     }
+ }
+ 
+ public void remove(Book book) {
+     for (String term : weights(book).keySet()) {
+         Map<Book, Integer> books = postings.get(term);
+         if (books != null) {
+             books.remove(book);
+             if (books.isEmpty()) {
+                 postings.remove(term, books);
+             }
+         }
+     }
+ }
+ 
+ /**
+  * Books matching every term of the query, best first. The last term also
+  * matches as a prefix, so results update as the user types.
+  */
+ public List<Book> search(String query, int limit) {
+     List<String> terms = tokenize(query);
+     if (terms.isEmpty() || limit <= 0) {
+         return Collections.emptyList();
+     }
+     String prefix = terms.remove(terms.size() - 1);
+     // Whole-word terms drive the intersection, smallest posting list first;
+     // the prefix is then checked per candidate instead of expanding its range
+     List<Map<Book, Integer>> matches = new ArrayList<>();
+     for (String term : terms) {
+         Map<Book, Integer> match = postings.get(term);
+         if (match == null) {
+             return Collections.emptyList();
+         }
+         matches.add(match);
+     }
+     matches.sort((a, b) -> Integer.compare(a.size(), b.size()));
+     if (matches.isEmpty()) {
+         matches.add(prefixMatches(prefix));
+         prefix = null;
+     }
+     
+     // Keep the best `limit` results in a min-heap on score
+     PriorityQueue<Map.Entry<Book, Integer>> best = new PriorityQueue<>(
+         (a, b) -> a.getValue().equals(b.getValue())
+                   ? b.getKey().getTitle().compareTo(a.getKey().getTitle())
+                   : Integer.compare(a.getValue(), b.getValue()));
+     candidates:
+     for (Map.Entry<Book, Integer> candidate : matches.get(0).entrySet()) {
+         int score = candidate.getValue();
+         for (int i = 1; i < matches.size(); i++) {
+             Integer weight = matches.get(i).get(candidate.getKey());
+             if (weight == null) {
+                 continue candidates;
+             }
+             score += weight;
+         }
+         if (prefix != null) {
+             int weight = prefixWeight(candidate.getKey(), prefix);
+             if (weight == 0) {
+                 continue;
+             }
+             score += weight;
+         }
+         best.add(Map.entry(candidate.getKey(), score));
+         if (best.size() > limit) {
+             best.poll();
+         }
+     }
+     List<Book> results = new ArrayList<>(best.size());
+     while (!best.isEmpty()) {
+         results.add(best.poll().getKey());
+     }
+     Collections.reverse(results);
+     return results;
+ }
+ 
+ /**
+  * Indexed terms starting with prefix, most common first
+  */
+ public List<String> autocomplete(String prefix, int limit) {
+     List<String> terms = tokenize(prefix);
+     if (terms.isEmpty() || limit <= 0) {
+         return Collections.emptyList();
+     }
+     // Each term's size is read once, as the lists keep changing; a min-heap keeps the best `limit`
+     PriorityQueue<Map.Entry<String, Integer>> best = new PriorityQueue<>(
+         (a, b) -> a.getValue().equals(b.getValue())
+                   ? b.getKey().compareTo(a.getKey())
+                   : Integer.compare(a.getValue(), b.getValue()));
+     for (Map.Entry<String, Map<Book, Integer>> term : prefixRange(terms.get(terms.size() - 1)).entrySet()) {
+         best.add(Map.entry(term.getKey(), term.getValue().size()));
+         if (best.size() > limit) {
+             best.poll();
+         }
+     }
+     List<String> completions = new ArrayList<>(best.size());
+     while (!best.isEmpty()) {
+         completions.add(best.poll().getKey());
+     }
+     Collections.reverse(completions);
+     return completions;
+ }
+ 
+ private Map<Book, Integer> prefixMatches(String prefix) {
+     Iterator<Map<Book, Integer>> lists = prefixRange(prefix).values().iterator();
+     if (!lists.hasNext()) {
+         return Collections.emptyMap();
+     }
+     Map<Book, Integer> first = lists.next();
+     if (!lists.hasNext()) {
+         return first;
+     }
+     Map<Book, Integer> merged = new HashMap<>();
+     for (Map<Book, Integer> books = first; ; books = lists.next()) {
+         for (Map.Entry<Book, Integer> entry : books.entrySet()) {
+             merged.merge(entry.getKey(), entry.getValue(), Math::max);
+             if (merged.size() == MAX_PREFIX_CANDIDATES) {
+                 return merged;
+             }
+         }
+         if (!lists.hasNext()) {
+             return merged;
+         }
+     }
+ }
+ 
+ private static int prefixWeight(Book book, String prefix) {
+     if (hasWordStartingWith(book.getTitle(), prefix)) {
+         return TITLE_WEIGHT;
+     }
+     return hasWordStartingWith(book.getAuthor(), prefix) ? AUTHOR_WEIGHT : 0;
+ }
+ 
+ private static boolean hasWordStartingWith(String text, String prefix) {
+     int from = 0;
+     while (from < text.length()) {
+         if (Character.isLetterOrDigit(text.charAt(from))
+             && (from == 0 || !Character.isLetterOrDigit(text.charAt(from - 1)))
+             && text.regionMatches(true, from, prefix, 0, prefix.length())) {
+             return true;
+         }
+         from++;
+     }
+     return false;
+ }
+ 
+ private NavigableMap<String, Map<Book, Integer>> prefixRange(String prefix) {
+     return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+ }
+ 
+ private static Map<String, Integer> weights(Book book) {
+     Map<String, Integer> weights = new HashMap<>();
+     for (String term : tokenize(book.getTitle())) {
+         weights.merge(term, TITLE_WEIGHT, Integer::sum);
+     }
+     for (String term : tokenize(book.getAuthor())) {
+         weights.merge(term, AUTHOR_WEIGHT, Integer::sum);
+     }
+     return weights;
+ }
+ 
+ /**
+  * Lower-cased runs of letters and digits
+  */
+ static List<String> tokenize(String text) {
+     List<String> terms = new ArrayList<>();
+     if (text == null) {
+         return terms;
+     }
+     int start = -1;
+     for (int i = 0; i <= text.length(); i++) {
+         boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+         if (wordChar && start < 0) {
+             start = i;
+         } else if (!wordChar && start >= 0) {
+             terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+             start = -1;
+         }
+     }
+     return terms;
+ }
+}
+
+//AvailabilityIndex Class
+//Every book in the library gets a slot number; one bit per slot says
+//whether it is on the shelf. Slots live in fixed 4096-slot chunks that
+//never move, so bits are flipped with atomic updates while only adding or
+//removing books takes the index lock. Counting is a counter read, and
+//listing skips chunks with nothing available, so both follow the number
+//of available books rather than the catalog size.
+class AvailabilityIndex {
+ private static final int CHUNK_BITS = 12;
+ private static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+ private static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+ 
+ private static final class Chunk {
+     final AtomicReferenceArray<Book> books = new AtomicReferenceArray<>(CHUNK_SLOTS);
+     final AtomicLongArray words = new AtomicLongArray(CHUNK_SLOTS >>> 6);
+     final LongAdder available = new LongAdder();
+ }
+ 
+ private volatile Chunk[] chunks = new Chunk[0];
+ private final LongAdder available = new LongAdder();
+ private int[] freeSlots = new int[16];   // guarded by this
+ private int freeCount;
+ private int nextSlot;
+ 
+ public synchronized void add(Book book) {
+     int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+     if ((slot >>> CHUNK_BITS) == chunks.length) {
+         Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+         grown[chunks.length] = new Chunk();
+         chunks = grown;
+     }
+     chunks[slot >>> CHUNK_BITS].books.set(slot & CHUNK_MASK, book);
+     book.attach(this, slot);
+     refresh(slot);
+ }
+ 
+ public synchronized void remove(Book book) {
+     int slot = book.getSlot();
+     book.attach(null, -1);
+     chunks[slot >>> CHUNK_BITS].books.set(slot & CHUNK_MASK, null);
+     refresh(slot);
+     if (freeCount == freeSlots.length) {
+         freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+     }
+     freeSlots[freeCount++] = slot;
+ }
+ 
+ /**
+  * Recompute one slot's bit from the book now in it. Whoever changes a
+  * book or a slot calls this afterwards; the re-check after each write
+  * means a thread that wrote a stale bit always corrects it, so the
+  * index settles on the true state without locking.
+  */
+ void refresh(int slot) {
+     Chunk[] current = chunks;
+     if (slot < 0 || (slot >>> CHUNK_BITS) >= current.length) {
+         return;
+     }
+     Chunk chunk = current[slot >>> CHUNK_BITS];
+     int index = slot & CHUNK_MASK;
+     long bit = 1L << index;
+     while (true) {
+         boolean wanted = onShelf(chunk.books.get(index));
+         long old = wanted ? chunk.words.getAndAccumulate(index >>> 6, bit, (w, b) -> w | b)
+                           : chunk.words.getAndAccumulate(index >>> 6, ~bit, (w, b) -> w & b);
+         boolean had = (old & bit) != 0;
+         if (had != wanted) {
+             chunk.available.add(wanted ? 1 : -1);
+             available.add(wanted ? 1 : -1);
+         }
+         if (onShelf(chunk.books.get(index)) == wanted) {
+             return;
+         }
+     }
+ }
+ 
+ private static boolean onShelf(Book book) {
+     return book != null && book.isAvailable();
+ }
+ 
+ public int count() {
+     return (int) available.sum();
+ }
+ 
+ public List<Book> list() {
+     List<Book> result = new ArrayList<>(Math.max(0, count()));
+     for (Chunk chunk : chunks) {
+         if (chunk.available.sum() == 0) {
+             continue;
+         }
+         for (int word = 0; word < CHUNK_SLOTS >>> 6; word++) {
+             for (long bits = chunk.words.get(word); bits != 0; bits &= bits - 1) {
+                 Book book = chunk.books.get((word << 6) + Long.numberOfTrailingZeros(bits));
+                 if (book != null) {
+                     result.add(book);
+                 }
+             }
+         }
+     }
+     return result;
+ }
+ 
+ //Every book in slot order - the order they were added, apart from reused slots
+ public List<Book> all() {
+     List<Book> result = new ArrayList<>();
+     for (Chunk chunk : chunks) {
+         for (int i = 0; i < CHUNK_SLOTS; i++) {
+             Book book = chunk.books.get(i);
+             if (book != null) {
+                 result.add(book);
+             }
+         }
+     }
+     return result;
+ }
+}
+
+//HeavyHitters Class
+//Streaming counts for an unbounded set of keys in fixed memory. Every key
+//is counted in a count-min sketch - DEPTH rows of atomic counters, each key
+//hashed to one counter per row, the smallest of which is its estimate
+//(never low, high only by collisions). Alongside it a small table keeps
+//the keys with the largest estimates; a key that is already there is
+//updated lock-free, and the lock is taken only when a new key's estimate
+//beats the smallest one held by an eighth, so near-ties at the bottom of
+//the table do not keep evicting each other.
+class HeavyHitters<K> {
+ private static final int DEPTH = 4;
+ 
+ private final int width;
+ private final AtomicIntegerArray counts;   // small enough to stay in cache
+ private final int capacity;
+ private final ConcurrentHashMap<K, Long> top = new ConcurrentHashMap<>();
+ private volatile long floor;   // estimate a new key must beat once the table is full
+ private final LongAdder total = new LongAdder();
+ 
+ HeavyHitters(int width, int capacity) {
+     this.width = Integer.highestOneBit(width);
+     this.counts = new AtomicIntegerArray(DEPTH * this.width);
+     this.capacity = capacity;
+ }
+ 
+ //Count one occurrence; returns the key's new estimate
+ public long add(K key) {
+     long hash = mix(key.hashCode());
+     long smallest = Long.MAX_VALUE;
+     for (int row = 0; row < DEPTH; row++) {
+         smallest = Math.min(smallest, counts.incrementAndGet(index(hash, row)));
+     }
+     total.increment();
+     Long held = top.get(key);
+     if (held == null) {
+         if (smallest > floor) {
+             offer(key, smallest);
+         }
+     } else if (held < smallest) {
+         top.replace(key, held, smallest);   // losing a race only delays the update to the next add
+     }
+     return smallest;
+ }
+ 
+ public long estimate(K key) {
+     long hash = mix(key.hashCode());
+     long estimate = Long.MAX_VALUE;
+     for (int row = 0; row < DEPTH; row++) {
+         estimate = Math.min(estimate, counts.get(index(hash, row)));
+     }
+     return estimate;
+ }
+ 
+ public long total() {
+     return total.sum();
+ }
+ 
+ //Up to n keys with the highest estimates, highest first
+ public List<Map.Entry<K, Long>> top(int n) {
+     List<Map.Entry<K, Long>> entries = new ArrayList<>();
+     for (Map.Entry<K, Long> entry : top.entrySet()) {
+         entries.add(Map.entry(entry.getKey(), entry.getValue()));
+     }
+     entries.sort(Map.Entry.<K, Long>comparingByValue().reversed());
+     return entries.subList(0, Math.min(n, entries.size()));
+ }
+ 
+ private synchronized void offer(K key, long estimate) {
+     if (top.containsKey(key) || estimate <= floor) {
+         return;
+     }
+     top.put(key, estimate);
+     if (top.size() <= capacity) {
+         return;
+     }
+     K smallest = null;
+     long smallestCount = Long.MAX_VALUE;
+     long nextCount = Long.MAX_VALUE;
+     for (Map.Entry<K, Long> entry : top.entrySet()) {
+         long count = entry.getValue();
+         if (count < smallestCount) {
+             nextCount = smallestCount;
+             smallest = entry.getKey();
+             smallestCount = count;
+         } else if (count < nextCount) {
+             nextCount = count;
+         }
+     }
+     top.remove(smallest);
+     floor = nextCount + (nextCount >>> 3);
+ }
+ 
+ //Row hashes are h1 + row * h2 from the two halves of one 64-bit hash
+ private int index(long hash, int row) {
+     int h = (int) hash + row * (int) (hash >>> 32);
+     return row * width + (h & (width - 1));
+ }
+ 
+ private static long mix(long h) {
+     h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+     h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+     return h ^ (h >>> 33);
+ }
+}
+
+//CirculationStats Class
+//What circulates, fed by every issue and return: the most borrowed titles
+//and authors as HeavyHitters, and issues and returns per hour over the
+//last day in a ring of 24 counters. Each ring slot packs its hour with its
+//count, so a slot from a day ago is reset by the same compare-and-set that
+//counts into it. Memory is fixed whatever the size of the catalog, and
+//everything can be read while issuing goes on.
+class CirculationStats {
+ private static final int HOURS = 24;
+ private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+ private static final int COUNT_BITS = 24;
+ private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+ 
+ private final HeavyHitters<Book> titles = new HeavyHitters<>(1 << 13, 64);
+ private final HeavyHitters<String> authors = new HeavyHitters<>(1 << 11, 64);
+ private final AtomicLongArray issuesByHour = new AtomicLongArray(HOURS);   // hour << COUNT_BITS | count
+ private final AtomicLongArray returnsByHour = new AtomicLongArray(HOURS);
+ private final LongAdder returns = new LongAdder();
+ 
+ void recordIssue(Book book, long now) {
+     titles.add(book);
+     authors.add(book.getAuthor());
+     count(issuesByHour, now);
+ }
+ 
+ void recordReturn(Book book, long now) {
+     returns.increment();
+     count(returnsByHour, now);
+ }
+ 
+ private static void count(AtomicLongArray ring, long now) {
+     long hour = now / HOUR_MILLIS;
+     int slot = (int) (hour % HOURS);
+     long current;
+     long next;
+     do {
+         current = ring.get(slot);
+         long stored = current >>> COUNT_BITS;
+         if (stored > hour) {
+             return;   // a late caller from an hour the ring has moved past
+         }
+         if (stored == hour) {
+             if ((current & COUNT_MASK) == COUNT_MASK) {
+                 return;   // saturated: the hour keeps its maximum count
+             }
+             next = current + 1;
+         } else {
+             next = hour << COUNT_BITS | 1;
+         }
+     } while (!ring.compareAndSet(slot, current, next));
+ }
+ 
+ //Counts for the last 24 hours, oldest first, the current hour last
+ private static long[] lastDay(AtomicLongArray ring, long now) {
+     long hour = now / HOUR_MILLIS;
+     long[] perHour = new long[HOURS];
+     for (int i = 0; i < HOURS; i++) {
+         long wanted = hour - (HOURS - 1) + i;
+         long value = ring.get((int) (wanted % HOURS));
+         perHour[i] = value >>> COUNT_BITS == wanted ? value & COUNT_MASK : 0;
+     }
+     return perHour;
+ }
+ 
+ public long issues() { return titles.total(); }
+ public long returns() { return returns.sum(); }
+ public List<Map.Entry<Book, Long>> topTitles(int n) { return titles.top(n); }
+ public List<Map.Entry<String, Long>> topAuthors(int n) { return authors.top(n); }
+ public long titleIssues(Book book) { return titles.estimate(book); }
+ public long authorIssues(String author) { return authors.estimate(author); }
+ public long[] issuesPerHour(long now) { return lastDay(issuesByHour, now); }
+ public long[] returnsPerHour(long now) { return lastDay(returnsByHour, now); }
+ 
+ public void print(int n) {
+     long now = System.currentTimeMillis();
+     long issuedToday = Arrays.stream(issuesPerHour(now)).sum();
+     long returnedToday = Arrays.stream(returnsPerHour(now)).sum();
+     System.out.printf("Issues: %,d, returns: %,d (last 24 hours: %,d issued, %,d returned, %.1f issues/hour)%n",
+                       issues(), returns(), issuedToday, returnedToday, issuedToday / (double) HOURS);
+     System.out.println("Most borrowed titles:");
+     for (Map.Entry<Book, Long> entry : topTitles(n)) {
+         System.out.println("  " + entry.getKey().getTitle() + " - " + entry.getValue());
+     }
+     System.out.println("Most borrowed authors:");
+     for (Map.Entry<String, Long> entry : topAuthors(n)) {
+         System.out.println("  " + entry.getKey() + " - " + entry.getValue());
+     }
+ }
+}
+
+//CatalogStore Class
+//On-disk home of a persistent Library, in one directory:
+//  catalog-<gen>-<n>.seg  the catalog, sorted by ISBN and split into
+//                         memory-mapped segments; a lookup is a binary
+//                         search over the mapped offsets table
+//  state.dat              users and open loans, plus the current generation
+//                         and the generation the catalog was last written in
+//  events-<gen>.log       every change since that generation was written:
+//                         books added or removed, copies added, users
+//                         added, issues, returns and fines; forced to disk
+//                         every few milliseconds by a background flusher
+//Opening maps the segments, loads users and loans and replays the log;
+//Book objects are only built when a book is first looked up, so startup
+//cost follows the number of loans and recent changes, not the catalog size.
+//  import-<n>.run         sorted runs spilled by a bulk import, merged into
+//                         the catalog when it finishes
+//checkpoint() writes the next generation: new segments only when the
+//catalog itself changed, always state.dat and a fresh log. Writing
+//state.dat is the commit point, so a crash mid-checkpoint leaves the
+//previous generation intact.
+class CatalogStore implements AutoCloseable {
+ private static final int SEGMENT_MAGIC = 0x4C425331;   // "LBS1"
+ private static final int STATE_MAGIC = 0x4C425347;     // "LBSG"
+ private static final long FLUSH_INTERVAL_MS = 5;
+ private static final int RUN_ROWS = 1 << 16;           // rows an import worker sorts in memory
+ private static final int MERGE_FAN_IN = 128;           // runs open at once while merging
+ private static final long LIVE = -2;                   // merge ranks: a materialized book wins,
+ private static final long STORED = -1;                 // then the stored one, then the first import row
+ private static final int SEGMENT_MAX_BOOKS = 1 << 20;
+ private static final long SEGMENT_MAX_BYTES = 1L << 28;
+ private static final String STATE_FILE = "state.dat";
+ static final int MAX_STRING_BYTES = 0xFFFF;
+ 
+ static final byte ADD_BOOK = 1;
+ static final byte ADD_COPIES = 2;
+ static final byte REMOVE_BOOK = 3;
+ static final byte ADD_USER = 4;
+ static final byte ISSUE = 5;
+ static final byte RETURN = 6;
+ static final byte FINE = 7;
+ 
+ //Every string the store writes - segment records, import runs, events and
+ //state - is [length: unsigned short][UTF-8 bytes]
+ static int writeString(DataOutput out, String text) throws IOException {
+     byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+     if (bytes.length > MAX_STRING_BYTES) {
+         throw new IOException("text of " + bytes.length + " bytes is too long to store");
+     }
+     out.writeShort(bytes.length);
+     out.write(bytes);
+     return 2 + bytes.length;
+ }
+ 
+ static String readString(DataInput in) throws IOException {
+     byte[] bytes = new byte[in.readUnsignedShort()];
+     in.readFully(bytes);
+     return new String(bytes, StandardCharsets.UTF_8);
+ }
+ 
+ //True if writeString can store text
+ static boolean fits(String text) {
+     if (text.length() <= MAX_STRING_BYTES / 3) {
+         return true;
+     }
+     long bytes = 0;
+     for (int i = 0; i < text.length() && bytes <= MAX_STRING_BYTES; i++) {
+         char c = text.charAt(i);
+         // A surrogate pair encodes to 4 bytes; 2 per char never undercounts
+         bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+     }
+     return bytes <= MAX_STRING_BYTES;
+ }
+ 
+ //One immutable, sorted, memory-mapped catalog file. Footer layout:
+ //[record offsets: int x count][count: int][magic: int]; each record is
+ //[isbn][title][author] as length-prefixed UTF-8 then [copies: int].
+ private static final class Segment {
+     final MappedByteBuffer buffer;
+     final int count;
+     final int offsetsAt;
+     
+     Segment(Path file) throws IOException {
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+             buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         }
+         int size = buffer.capacity();
+         if (size < 8 || buffer.getInt(size - 4) != SEGMENT_MAGIC) {
+             throw new IOException("corrupt catalog segment " + file);
+         }
+         count = buffer.getInt(size - 8);
+         offsetsAt = size - 8 - 4 * count;
+     }
+     
+     String isbn(int i) {
+         return string(buffer.getInt(offsetsAt + 4 * i));
+     }
+     
+     //Index of the ISBN, or -1
+     int find(String isbn) {
+         int low = 0;
+         int high = count - 1;
+         while (low <= high) {
+             int mid = (low + high) >>> 1;
+             int cmp = isbn(mid).compareTo(isbn);
+             if (cmp < 0) {
+                 low = mid + 1;
+             } else if (cmp > 0) {
+                 high = mid - 1;
+             } else {
+                 return mid;
+             }
+         }
+         return -1;
+     }
+     
+     Book read(int i) {
+         int at = buffer.getInt(offsetsAt + 4 * i);
+         String isbn = string(at);
+         at = skip(at);
+         String title = string(at);
+         at = skip(at);
+         String author = string(at);
+         return new Book(title, author, isbn, buffer.getInt(skip(at)));
+     }
+     
+     //Offset just past the string at
+     int skip(int at) {
+         return at + 2 + (buffer.getShort(at) & 0xFFFF);
+     }
+     
+     private String string(int at) {
+         byte[] bytes = new byte[buffer.getShort(at) & 0xFFFF];
+         buffer.get(at + 2, bytes);
+         return new String(bytes, StandardCharsets.UTF_8);
+     }
+ }
+ 
+ //Streams sorted records into as many segment files as the size limits need
+ private static final class SegmentWriter implements AutoCloseable {
+     private final Path dir;
+     private final long generation;
+     private int fileNumber;
+     private DataOutputStream out;
+     private int[] offsets = new int[1024];
+     private int count;
+     private int position;
+     
+     SegmentWriter(Path dir, long generation) {
+         this.dir = dir;
+         this.generation = generation;
+     }
+     
+     void write(String isbn, String title, String author, int copies) throws IOException {
+         if (out == null || count == SEGMENT_MAX_BOOKS || position >= SEGMENT_MAX_BYTES) {
+             finishFile();
+             out = new DataOutputStream(new BufferedOutputStream(
+                 Files.newOutputStream(segmentFile(dir, generation, fileNumber++)), 1 << 16));
+         }
+         if (count == offsets.length) {
+             offsets = Arrays.copyOf(offsets, count * 2);
+         }
+         offsets[count++] = position;
+         position += writeString(out, isbn) + writeString(out, title) + writeString(out, author) + 4;
+         out.writeInt(copies);
+     }
+     
+     private void finishFile() throws IOException {
+         if (out == null) {
+             return;
+         }
+         for (int i = 0; i < count; i++) {
+             out.writeInt(offsets[i]);
+         }
+         out.writeInt(count);
+         out.writeInt(SEGMENT_MAGIC);
+         out.close();
+         out = null;
+         count = 0;
+         position = 0;
+     }
+     
+     @Override
+     public void close() throws IOException {
+         finishFile();
+     }
+ }
+ 
+ //One record stream in a merge, sorted by ISBN and then rank. The fields
+ //describe the current record; isbn is null once the stream is done.
+ private abstract static class Source implements AutoCloseable {
+     String isbn;
+     String title;
+     String author;
+     int copies;
+     long rank;
+     
+     abstract void advance() throws IOException;
+     
+     @Override
+     public void close() throws IOException {
+     }
+ }
+ 
+ private static final Comparator<Source> SOURCE_ORDER = (a, b) -> {
+     int byIsbn = a.isbn.compareTo(b.isbn);
+     return byIsbn != 0 ? byIsbn : Long.compare(a.rank, b.rank);
+ };
+ 
+ //Books the library has materialized, which may be newer than the segments
+ private static final class BookSource extends Source {
+     private final Iterator<Book> books;
+     
+     BookSource(Iterator<Book> books) {
+         this.books = books;
+         this.rank = LIVE;
+     }
+     
+     @Override
+     void advance() {
+         if (!books.hasNext()) {
+             isbn = null;
+             return;
+         }
+         Book book = books.next();
+         isbn = book.getIsbn();
+         title = book.getTitle();
+         author = book.getAuthor();
+         copies = book.getTotalCopies();
+     }
+ }
+ 
+ //The stored catalog minus books removed since the checkpoint; builds no Book objects
+ private static final class SegmentSource extends Source {
+     private final Iterator<Segment> segments;
+     private final Set<String> removed;
+     private Segment segment;
+     private int next;
+     
+     SegmentSource(List<Segment> segments, Set<String> removed) {
+         this.segments = segments.iterator();
+         this.removed = removed;
+         this.rank = STORED;
+     }
+     
+     @Override
+     void advance() {
+         while (true) {
+             while (segment == null || next == segment.count) {
+                 if (!segments.hasNext()) {
+                     isbn = null;
+                     return;
+                 }
+                 segment = segments.next();
+                 next = 0;
+             }
+             int at = segment.buffer.getInt(segment.offsetsAt + 4 * next++);
+             isbn = segment.string(at);
+             if (!removed.contains(isbn)) {
+                 at = segment.skip(at);
+                 title = segment.string(at);
+                 at = segment.skip(at);
+                 author = segment.string(at);
+                 copies = segment.buffer.getInt(segment.skip(at));
+                 return;
+             }
+         }
+     }
+ }
+ 
+ //One sorted import run: [count: int] then count x [isbn][title][author]
+ //as UTF then [copies: int][line number: long]; the rank is the line number
+ private static final class RunSource extends Source {
+     private final DataInputStream in;
+     private final int count;
+     private int read;
+     
+     RunSource(Path file) throws IOException {
+         in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+         count = in.readInt();
+     }
+     
+     @Override
+     void advance() throws IOException {
+         if (read == count) {
+             isbn = null;
+             return;
+         }
+         read++;
+         isbn = readString(in);
+         title = readString(in);
+         author = readString(in);
+         copies = in.readInt();
+         rank = in.readLong();
+     }
+     
+     @Override
+     public void close() throws IOException {
+         in.close();
+     }
+ }
+ 
+ private static void writeRow(DataOutputStream out, String isbn, String title, String author, int copies, long line)
+         throws IOException {
+     writeString(out, isbn);
+     writeString(out, title);
+     writeString(out, author);
+     out.writeInt(copies);
+     out.writeLong(line);
+ }
+ 
+ //One import row waiting in a RunBuffer
+ private static final class Row {
+     final String isbn;
+     final String title;
+     final String author;
+     final int copies;
+     final long line;
+     
+     Row(String isbn, String title, String author, int copies, long line) {
+         this.isbn = isbn;
+         this.title = title;
+         this.author = author;
+         this.copies = copies;
+         this.line = line;
+     }
+ }
+ 
+ private static final Comparator<Row> ROW_ORDER = (a, b) -> {
+     int byIsbn = a.isbn.compareTo(b.isbn);
+     return byIsbn != 0 ? byIsbn : Long.compare(a.line, b.line);
+ };
+ 
+ //One import worker's rows; sorted and spilled to a run file whenever
+ //RUN_ROWS have collected, so a worker never holds more than that
+ final class RunBuffer {
+     private final List<Row> rows = new ArrayList<>();
+     
+     void add(String isbn, String title, String author, int copies, long line) throws IOException {
+         rows.add(new Row(isbn, title, author, copies, line));
+         if (rows.size() == RUN_ROWS) {
+             flush();
+         }
+     }
+     
+     void flush() throws IOException {
+         if (rows.isEmpty()) {
+             return;
+         }
+         rows.sort(ROW_ORDER);
+         Path file = newRunFile();
+         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+             out.writeInt(rows.size());
+             for (Row row : rows) {
+                 writeRow(out, row.isbn, row.title, row.author, row.copies, row.line);
+             }
+         }
+         runs.add(file);
+         rows.clear();
+     }
+ }
+ 
+ private final Path dir;
+ private long generation;
+ private long catalogGeneration;                                      // names the segment files
+ private volatile List<Segment> segments = new ArrayList<>();
+ private final Set<String> removed = ConcurrentHashMap.newKeySet();   // segment ISBNs deleted since the checkpoint
+ private volatile FileChannel log;                                    // null while loading
+ private volatile boolean catalogDirty;                               // books or copies changed since the checkpoint
+ private volatile boolean stateDirty;                                 // users, loans or fines changed since it
+ private volatile boolean unforced;                                   // log written since the last force
+ private volatile boolean closed;
+ private Thread flusher;
+ private final List<Path> runs = Collections.synchronizedList(new ArrayList<>());   // spilled by the current import
+ private final AtomicInteger runNumber = new AtomicInteger();
+ 
+ CatalogStore(Path dir) throws IOException {
+     this.dir = dir;
+     Files.createDirectories(dir);
+     Path state = dir.resolve(STATE_FILE);
+     if (Files.exists(state)) {
+         try (DataInputStream in = new DataInputStream(Files.newInputStream(state))) {
+             if (in.readInt() != STATE_MAGIC) {
+                 throw new IOException("corrupt library state " + state);
+             }
+             generation = in.readLong();
+             catalogGeneration = in.readLong();
+         }
+     }
+     deleteOtherGenerations();
+     try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "import-*.run")) {
+         for (Path file : files) {
+             Files.delete(file);   // left by an import that never finished
+         }
+     }
+     for (int n = 0; Files.exists(segmentFile(dir, catalogGeneration, n)); n++) {
+         segments.add(new Segment(segmentFile(dir, catalogGeneration, n)));
+     }
+ }
+ 
+ private static Path segmentFile(Path dir, long generation, int number) {
+     return dir.resolve(String.format("catalog-%08d-%04d.seg", generation, number));
+ }
+ 
+ private static Path logFile(Path dir, long generation) {
+     return dir.resolve(String.format("events-%08d.log", generation));
+ }
+ 
+ //Leftovers of an older generation, or of a checkpoint that never committed
+ private void deleteOtherGenerations() throws IOException {
+     String catalog = String.format("catalog-%08d-", catalogGeneration);
+     String events = logFile(dir, generation).getFileName().toString();
+     try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "{catalog,events}-*")) {
+         for (Path file : files) {
+             String name = file.getFileName().toString();
+             if (!name.startsWith(catalog) && !name.equals(events)) {
+                 try {
+                     Files.delete(file);
+                 } catch (IOException e) {
+                     // Still mapped on some platforms; the next open removes it
+                 }
+             }
+         }
+     }
+ }
+ 
+ public long segmentBookCount() {
+     long total = 0;
+     for (Segment segment : segments) {
+         total += segment.count;
+     }
+     return total;
+ }
+ 
+ //Build the stored Book for an ISBN; null if absent or removed since the checkpoint
+ Book read(String isbn) {
+     if (removed.contains(isbn)) {
+         return null;
+     }
+     List<Segment> current = segments;
+     int low = 0;
+     int high = current.size() - 1;
+     while (low <= high) {
+         // Segments cover ascending, non-overlapping ISBN ranges
+         int mid = (low + high) >>> 1;
+         Segment segment = current.get(mid);
+         if (segment.count == 0 || segment.isbn(segment.count - 1).compareTo(isbn) < 0) {
+             low = mid + 1;
+         } else if (segment.isbn(0).compareTo(isbn) > 0) {
+             high = mid - 1;
+         } else {
+             int i = segment.find(isbn);
+             return i < 0 ? null : segment.read(i);
+         }
+     }
+     return null;
+ }
+ 
+ //Every stored book not removed since the checkpoint, in ISBN order
+ void forEachBook(Consumer<Book> action) {
+     for (Segment segment : segments) {
+         for (int i = 0; i < segment.count; i++) {
+             if (!removed.contains(segment.isbn(i))) {
+                 action.accept(segment.read(i));
+             }
+         }
+     }
+ }
+ 
+ //Users, loans, then the event log - through the library's normal quiet
+ //paths, which log nothing until startLogging() is called
+ void load(Library library) throws IOException {
+     Path state = dir.resolve(STATE_FILE);
+     if (Files.exists(state)) {
+         try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(state)))) {
+             in.readInt();    // magic and generations, already checked by the constructor
+             in.readLong();
+             in.readLong();
+             int userCount = in.readInt();
+             for (int u = 0; u < userCount; u++) {
+                 User user = new User(readString(in), readString(in));
+                 library.register(user);
+                 user.restoreFine(in.readLong());
+                 int loanCount = in.readInt();
+                 for (int l = 0; l < loanCount; l++) {
+                     library.restoreLoan(user.getUserId(), readString(in), in.readLong(), in.readLong());
+                 }
+             }
+         }
+     }
+     Path events = logFile(dir, generation);
+     if (Files.exists(events)) {
+         long complete = 0;   // end of the last whole record
+         try (CountingInputStream counter = new CountingInputStream(Files.newInputStream(events));
+              DataInputStream in = new DataInputStream(counter)) {
+             while (true) {
+                 int type = in.read();
+                 if (type < 0) {
+                     break;
+                 }
+                 replay((byte) type, in, library);
+                 changed((byte) type);
+                 complete = counter.count;
+             }
+         } catch (EOFException e) {
+             // Torn last record from a crash - everything before it is applied
+         }
+         // Cut the torn bytes off, or the next event would be appended after them
+         try (FileChannel channel = FileChannel.open(events, StandardOpenOption.WRITE)) {
+             if (channel.size() > complete) {
+                 channel.truncate(complete);
+                 channel.force(false);
+             }
+         }
+     }
+ }
+ 
+ //Buffered input that knows how many bytes it has handed out
+ private static final class CountingInputStream extends BufferedInputStream {
+     long count;
+     
+     CountingInputStream(InputStream in) {
+         super(in);
+     }
+     
+     @Override
+     public synchronized int read() throws IOException {
+         int b = super.read();
+         if (b >= 0) {
+             count++;
+         }
+         return b;
+     }
+     
+     @Override
+     public synchronized int read(byte[] bytes, int off, int len) throws IOException {
+         int n = super.read(bytes, off, len);
+         if (n > 0) {
+             count += n;
+         }
+         return n;
+     }
+     
+     @Override
+     public synchronized long skip(long n) throws IOException {
+         long skipped = super.skip(n);
+         count += skipped;
+         return skipped;
+     }
+ }
+ 
+ private void replay(byte type, DataInputStream in, Library library) throws IOException {
+     switch (type) {
+         case ADD_BOOK: {
+             String isbn = readString(in);
+             String title = readString(in);
+             String author = readString(in);
+             library.register(new Book(title, author, isbn, in.readInt()));
+             break;
+         }
+         case ADD_COPIES:
+             library.addCopies(readString(in), in.readInt());
+             break;
+         case REMOVE_BOOK:
+             library.remove(readString(in));
+             break;
+         case ADD_USER: {
+             String name = readString(in);
+             library.register(new User(name, readString(in)));
+             break;
+         }
+         case ISSUE:
+             library.restoreLoan(readString(in), readString(in), in.readLong(), in.readLong());
+             break;
+         case RETURN: {
+             String userId = readString(in);
+             library.restoreReturn(userId, readString(in));
+             break;
+         }
+         case FINE: {
+             String userId = readString(in);
+             library.restoreFine(userId, in.readLong());
+             break;
+         }
+         default:
+             throw new IOException("unknown library event " + type);
+     }
+ }
+ 
+ synchronized void startLogging() throws IOException {
+     log = FileChannel.open(logFile(dir, generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+     if (flusher == null) {
+         flusher = new Thread(this::flushLoop, "library-log-flusher");
+         flusher.setDaemon(true);
+         flusher.start();
+     }
+ }
+ 
+ //Group commit: one force() covers every event written in the interval.
+ //Never interrupted - an interrupt during force() would close the log.
+ private void flushLoop() {
+     while (!closed) {
+         try {
+             Thread.sleep(FLUSH_INTERVAL_MS);
+         } catch (InterruptedException e) {
+             break;
+         }
+         FileChannel current = log;
+         if (current == null || !unforced) {
+             continue;
+         }
+         unforced = false;
+         try {
+             current.force(false);
+         } catch (ClosedChannelException e) {
+             // Rolled by a checkpoint, whose state.dat already holds these events
+         } catch (IOException e) {
+             unforced = true;
+             System.out.println("Event log flush failed: " + e.getMessage());
+         }
+     }
+ }
+ 
+ private void changed(byte type) {
+     if (type <= REMOVE_BOOK) {
+         catalogDirty = true;
+     } else {
+         stateDirty = true;
+     }
+ }
+ 
+ void bookAdded(Book book) {
+     removed.remove(book.getIsbn());
+     append(ADD_BOOK, out -> {
+         writeString(out, book.getIsbn());
+         writeString(out, book.getTitle());
+         writeString(out, book.getAuthor());
+         out.writeInt(book.getTotalCopies());
+     });
+ }
+ 
+ void copiesAdded(Book book, int copies) {
+     append(ADD_COPIES, out -> {
+         writeString(out, book.getIsbn());
+         out.writeInt(copies);
+     });
+ }
+ 
+ void bookRemoved(String isbn) {
+     removed.add(isbn);
+     append(REMOVE_BOOK, out -> writeString(out, isbn));
+ }
+ 
+ void userAdded(User user) {
+     append(ADD_USER, out -> {
+         writeString(out, user.getName());
+         writeString(out, user.getUserId());
+     });
+ }
+ 
+ void loanOpened(Loan loan) {
+     append(ISSUE, out -> {
+         writeString(out, loan.getUser().getUserId());
+         writeString(out, loan.getBook().getIsbn());
+         out.writeLong(loan.getBorrowedAt());
+         out.writeLong(loan.getDueAt());
+     });
+ }
+ 
+ void loanClosed(Loan loan) {
+     append(RETURN, out -> {
+         writeString(out, loan.getUser().getUserId());
+         writeString(out, loan.getBook().getIsbn());
+     });
+ }
+ 
+ void fineCharged(User user, long cents) {
+     append(FINE, out -> {
+         writeString(out, user.getUserId());
+         out.writeLong(cents);
+     });
+ }
+ 
+ private interface EventWriter {
+     void write(DataOutputStream out) throws IOException;
+ }
+ 
+ //Encode outside the lock, then one write() per event
+ private void append(byte type, EventWriter writer) {
+     if (log == null) {
+         return;
+     }
+     changed(type);
+     try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+         DataOutputStream out = new DataOutputStream(bytes);
+         out.writeByte(type);
+         writer.write(out);
+         ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+         synchronized (this) {
+             if (log != null) {
+                 while (record.hasRemaining()) {
+                     log.write(record);
+                 }
+                 unforced = true;
+             }
+         }
+     } catch (IOException e) {
+         throw new UncheckedIOException("cannot write library event log", e);
+     }
+ }
+ 
+ /**
+  * Write the next generation: if books or copies changed, the stored
+  * catalog merged with every book the library has materialized; then
+  * users and loans, then switch to an empty log. Loan traffic alone only
+  * rewrites state.dat, so its cost follows users and loans, not the
+  * catalog size. Call when no other thread is changing the library, e.g.
+  * on shutdown - a change made during the checkpoint could be replayed
+  * twice. Does nothing if nothing has changed since the last one.
+  */
+ synchronized void checkpoint(Library library) throws IOException {
+     if (!catalogDirty && !stateDirty) {
+         return;
+     }
+     commit(library, List.of());
+ }
+ 
+ RunBuffer newRunBuffer() {
+     return new RunBuffer();
+ }
+ 
+ private Path newRunFile() {
+     return dir.resolve(String.format("import-%06d.run", runNumber.getAndIncrement()));
+ }
+ 
+ /**
+  * Finish a bulk import: merge every run the workers spilled into the
+  * next catalog generation and commit it like a checkpoint. Runs are
+  * merged MERGE_FAN_IN at a time, so memory stays bounded however many
+  * there are. A row whose ISBN is already in the catalog, or on an
+  * earlier line, is dropped.
+  * @return how many books were added to the catalog
+  */
+ synchronized long finishImport(Library library) throws IOException {
+     List<Path> pending = new ArrayList<>(runs);
+     runs.clear();
+     try {
+         while (pending.size() > MERGE_FAN_IN) {
+             List<Path> group = pending.subList(0, MERGE_FAN_IN);
+             Path merged = mergeRuns(group);
+             for (Path run : group) {
+                 Files.delete(run);
+             }
+             group.clear();
+             pending.add(merged);
+         }
+         return commit(library, pending);
+     } finally {
+         for (Path run : pending) {
+             Files.deleteIfExists(run);
+         }
+     }
+ }
+ 
+ //Throw away the runs of an import that failed
+ synchronized void abortImport() throws IOException {
+     for (Path run : new ArrayList<>(runs)) {
+         Files.deleteIfExists(run);
+     }
+     runs.clear();
+ }
+ 
+ //Combine sorted runs into one, keeping every row
+ private Path mergeRuns(List<Path> group) throws IOException {
+     Path merged = newRunFile();
+     List<Source> sources = new ArrayList<>();
+     try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(merged), 1 << 16))) {
+         int count = 0;
+         for (Path run : group) {
+             RunSource source = new RunSource(run);
+             sources.add(source);
+             count += source.count;
+         }
+         out.writeInt(count);
+         PriorityQueue<Source> queue = start(sources);
+         while (!queue.isEmpty()) {
+             Source top = queue.poll();
+             writeRow(out, top.isbn, top.title, top.author, top.copies, top.rank);
+             requeue(queue, top);
+         }
+     } finally {
+         for (Source source : sources) {
+             source.close();
+         }
+     }
+     return merged;
+ }
+ 
+ private static PriorityQueue<Source> start(List<Source> sources) throws IOException {
+     PriorityQueue<Source> queue = new PriorityQueue<>(Math.max(sources.size(), 1), SOURCE_ORDER);
+     for (Source source : sources) {
+         requeue(queue, source);
+     }
+     return queue;
+ }
+ 
+ private static void requeue(PriorityQueue<Source> queue, Source source) throws IOException {
+     source.advance();
+     if (source.isbn != null) {
+         queue.add(source);
+     }
+ }
+ 
+ //Write the next generation, with imported runs merged into the catalog;
+ //returns how many of their rows became books
+ private long commit(Library library, List<Path> imported) throws IOException {
+     boolean rewriteCatalog = catalogDirty || !imported.isEmpty();
+     catalogDirty = false;
+     stateDirty = false;
+     long next = generation + 1;
+     long added = rewriteCatalog ? writeCatalog(library, next, imported) : 0;
+     long nextCatalog = rewriteCatalog ? next : catalogGeneration;
+     
+     Path tmp = dir.resolve(STATE_FILE + ".tmp");
+     try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+         out.writeInt(STATE_MAGIC);
+         out.writeLong(next);
+         out.writeLong(nextCatalog);
+         List<User> users = library.allUsers();
+         out.writeInt(users.size());
+         for (User user : users) {
+             writeString(out, user.getName());
+             writeString(out, user.getUserId());
+             out.writeLong(user.getFinesCharged());
+             List<Loan> loans = user.getLoans();
+             out.writeInt(loans.size());
+             for (Loan loan : loans) {
+                 writeString(out, loan.getBook().getIsbn());
+                 out.writeLong(loan.getBorrowedAt());
+                 out.writeLong(loan.getDueAt());
+             }
+         }
+         out.flush();
+         file.getFD().sync();
+     }
+     Files.move(tmp, dir.resolve(STATE_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+     
+     boolean logging = log != null;
+     if (logging) {
+         log.close();
+     }
+     generation = next;
+     if (rewriteCatalog) {
+         catalogGeneration = next;
+         List<Segment> reopened = new ArrayList<>();
+         for (int n = 0; Files.exists(segmentFile(dir, catalogGeneration, n)); n++) {
+             reopened.add(new Segment(segmentFile(dir, catalogGeneration, n)));
+         }
+         segments = reopened;
+         removed.clear();
+     }
+     deleteOtherGenerations();
+     log = null;
+     if (logging) {
+         startLogging();
+     }
+     return added;
+ }
+ 
+ //The stored catalog, every materialized book and the imported runs merged
+ //into generation next's segments. Of several records with one ISBN the
+ //lowest-ranked is kept: the live copy, else the stored one, else the
+ //import row from the earliest line. Returns how many import rows were kept.
+ private long writeCatalog(Library library, long next, List<Path> imported) throws IOException {
+     TreeMap<String, Book> loaded = new TreeMap<>();
+     for (Book book : library.loadedBooks()) {
+         loaded.put(book.getIsbn(), book);
+     }
+     List<Source> sources = new ArrayList<>();
+     sources.add(new BookSource(loaded.values().iterator()));
+     sources.add(new SegmentSource(segments, removed));
+     long added = 0;
+     try (SegmentWriter writer = new SegmentWriter(dir, next)) {
+         for (Path run : imported) {
+             sources.add(new RunSource(run));
+         }
+         PriorityQueue<Source> queue = start(sources);
+         while (!queue.isEmpty()) {
+             Source top = queue.poll();
+             String isbn = top.isbn;
+             writer.write(isbn, top.title, top.author, top.copies);
+             if (top.rank >= 0) {
+                 added++;
+             }
+             requeue(queue, top);
+             while (!queue.isEmpty() && queue.peek().isbn.equals(isbn)) {
+                 requeue(queue, queue.poll());   // a duplicate of the record just written
+             }
+         }
+     } finally {
+         for (Source source : sources) {
+             source.close();
+         }
+     }
+     return added;
+ }
+ 
+ //Books were added without going through the event log
+ void markCatalogDirty() {
+     catalogDirty = true;
+ }
+ 
+ @Override
+ public synchronized void close() throws IOException {
+     closed = true;
+     if (flusher != null) {
+         try {
+             flusher.join();
+         } catch (InterruptedException e) {
+             Thread.currentThread().interrupt();
+         }
+     }
+     if (log != null) {
+         log.force(false);
+         log.close();
+         log = null;
+     }
+ }
+}
+
+//Library Class
+//Books and users are hash-indexed by ISBN and user ID, so lookups, issue,
+//return and remove cost the same at any catalog size. Every structure is
+//concurrent and a checkout only touches the book's own availability flag
+//and the borrower's lock, so there is no library-wide lock to queue on.
+//Books are listed in slot order, which is the order they were added.
+//A library opened on a directory is backed by a CatalogStore: books are
+//read from it the first time they are looked up, and the listing and
+//search methods load the rest of the catalog when first called.
+class Library {
+ private final Map<Object, Book> books;   // by Book.isbnKey
+ private final Map<String, User> users;
+ private final Queue<User> usersInOrder = new ConcurrentLinkedQueue<>();   // registration order, for display
+ private final SearchIndex searchIndex = new SearchIndex();
+ private final AvailabilityIndex availableBooks = new AvailabilityIndex();
+ private final LoanLedger loans = new LoanLedger();
+ private CatalogStore store;                  // null when running in memory only
+ private ScheduledExecutorService overdueSweeps;   // guarded by this
+ private volatile boolean fullyLoaded = true;
+ private final Object loadLock = new Object();
+ 
+ private static final int SEARCH_LIMIT = 20;
+ 
+ public Library() {
+     this.books = new ConcurrentHashMap<>();
+     this.users = new ConcurrentHashMap<>();
+ }
+ 
+ /**
+  * Open the library saved in dir (or a new, empty one there)
+  */
+ public static Library open(Path dir) throws IOException {
+     long start = System.nanoTime();
+     Library library = new Library();
+     CatalogStore store = new CatalogStore(dir);
+     library.store = store;
+     library.fullyLoaded = store.segmentBookCount() == 0;
+     library.loans.attach(store);
+     store.load(library);
+     store.startLogging();
+     System.out.printf("Library opened: %,d books on file, %,d users, %,d loans in %d ms%n",
+                       store.segmentBookCount(), library.usersInOrder.size(), library.countLoans(),
+                       (System.nanoTime() - start) / 1_000_000);
+     return library;
+ }
+ 
+ /**
+  * Fold the event log into a fresh catalog and loan store (no-op in memory)
+  */
+ public void checkpoint() throws IOException {
+     if (store != null) {
+         store.checkpoint(this);
+     }
+ }
+ 
+ /**
+  * Checkpoint and close the store - call on shutdown
+  */
+ public void close() throws IOException {
+     synchronized (this) {
+         if (overdueSweeps != null) {
+             overdueSweeps.shutdown();
+         }
+     }
+     if (store != null) {
+         store.checkpoint(this);
+         store.close();
+     }
+ }
+ 
+ public boolean isEmpty() {
+     return books.isEmpty() && (store == null || store.segmentBookCount() == 0);
+ }
+ 
+ public void addBook(Book book) {
+     if (!CatalogStore.fits(book.getIsbn()) || !CatalogStore.fits(book.getTitle())
+         || !CatalogStore.fits(book.getAuthor())) {
+         System.out.println("Error: ISBN, title and author must each be at most "
+                            + CatalogStore.MAX_STRING_BYTES + " bytes of UTF-8");
+         return;
+     }
+     if (!register(book)) {
+         // Same ISBN again means more copies of a title we already hold
+         Book existing = findBookByIsbn(book.getIsbn());
+         addCopies(book.getIsbn(), book.getTotalCopies());
+         System.out.println("Copies added: " + existing.getTitle() + " (now " + existing.getTotalCopies() + " copies)");
+         return;
+     }
+     System.out.println("Book added: " + book.getTitle());
+ }
+ 
+ //Quiet add for bulk loading; false if the ISBN is already present
+ boolean register(Book book) {
+     if (findBookByIsbn(book.getIsbn()) != null || !insert(book)) {
+         return false;
+     }
+     if (store != null) {
+         store.bookAdded(book);
+     }
+     return true;
+ }
  
- public User(String name, String userId) {
-     this.name = name;
-     this.userId = userId;
-     this.borrowedBooks = new ArrayList<>();
+ //Bulk-import add for a library kept in memory only: indexed like any
+ //other book, not logged. Returns how many were new; the search index
+ //takes the new ones in one grouped pass.
+ int importBooks(List<Book> batch) {
+     List<Book> added = new ArrayList<>(batch.size());
+     for (Book book : batch) {
+         if (findBookByIsbn(book.getIsbn()) == null && books.putIfAbsent(book.isbnKey(), book) == null) {
+             availableBooks.add(book);
+             added.add(book);
+         }
+     }
+     searchIndex.addAll(added);
+     if (store != null && !added.isEmpty()) {
+         store.markCatalogDirty();
+     }
+     return added.size();
  }
  
- public String getName() { return name; }
- public String getUserId() { return userId; }
- public List<Book> getBorrowedBooks() { return borrowedBooks; }
+ //A buffer for one worker of a bulk import into the stored catalog; null
+ //when the library is in memory only and importBooks must be used
+ CatalogStore.RunBuffer newImportBuffer() {
+     return store == null ? null : store.newRunBuffer();
+ }
  
- public void borrowBook(Book book) {
-     if (book.isAvailable()) {
-         borrowedBooks.add(book);
-         book.setAvailable(false);
-         System.out.println(name + " successfully borrowed: " + book.getTitle());
-     } else {
-         System.out.println("Sorry, " + book.getTitle() + " is not available.");
+ //Merge a bulk import's spilled runs into the stored catalog and commit.
+ //The new books stay on disk until first looked up, like the rest of it.
+ long finishImport() throws IOException {
+     long added = store.finishImport(this);
+     if (added > 0) {
+         fullyLoaded = false;
      }
+     return added;
  }
  
- public void returnBook(Book book) {
-     if (borrowedBooks.contains(book)) {
-         borrowedBooks.remove(book);
-         book.setAvailable(true);
-         System.out.println(name + " successfully returned: " + book.getTitle());
-     } else {
-         System.out.println("You didn't borrow this book: " + book.getTitle());
+ void abortImport() throws IOException {
+     if (store != null) {
+         store.abortImport();
      }
  }
  
- public void displayInfo() {
-     System.out.println("User: " + name + " (ID: " + userId + ")");
-     System.out.println("Borrowed Books:");
-     if (borrowedBooks.isEmpty()) {
-         System.out.println("  No books borrowed");
-     } else {
-         for (Book book : borrowedBooks) {
-             System.out.println("  - " + book.getTitle());
-         }
+ private boolean insert(Book book) {
+     if (books.putIfAbsent(book.isbnKey(), book) != null) {
+         return false;
      }
+     searchIndex.add(book);
+     availableBooks.add(book);
+     return true;
  }
-}
-
-//Library Class
-class Library {
- private List<Book> books;
- private List<User> users;
  
- public Library() {
-     this.books = new ArrayList<>();
-     this.users = new ArrayList<>();
+ boolean addCopies(String isbn, int copies) {
+     Book book = findBookByIsbn(isbn);
+     if (book == null) {
+         return false;
+     }
+     book.addCopies(copies);
+     if (store != null) {
+         store.copiesAdded(book, copies);
+     }
+     return true;
  }
  
- public void addBook(Book book) {
-     books.add(book);
-     System.out.println("Book added: " + book.getTitle());
+ //Quiet remove; the removed book, or null if there was none
+ Book remove(String isbn) {
+     Book book = findBookByIsbn(isbn);
+     if (book == null || !books.remove(book.isbnKey(), book)) {
+         return null;
+     }
+     searchIndex.remove(book);
+     availableBooks.remove(book);
+     if (store != null) {
+         store.bookRemoved(isbn);
+     }
+     return book;
  }
  
  public void removeBook(String isbn) {
-     Book bookToRemove = null;
-     for (Book book : books) {
-         if (book.getIsbn().equals(isbn)) {
-             bookToRemove = book;
-             break;
-         }
-     }
+     Book bookToRemove = remove(isbn);
      
      if (bookToRemove != null) {
-         books.remove(bookToRemove);
          System.out.println("Book removed: " + bookToRemove.getTitle());
      } else {
          System.out.println("Book with ISBN " + isbn + " not found.");
@@ -114,7 +2333,10 @@ class Library {
  }
  
  public void addUser(User user) {
-     users.add(user);
+     if (!register(user)) {
+         System.out.println("User with ID " + user.getUserId() + " already exists.");
+         return;
+     }
      System.out.println("User added: " + user.getName());
  }
  
@@ -139,7 +2361,11 @@ class Library {
      Book book = findBookByIsbn(isbn);
      
      if (user != null && book != null) {
+         User waiting = book.nextReservation();
          user.returnBook(book);
+         if (waiting != null && book.nextReservation() != waiting && waiting.holds(book)) {
+             System.out.println("Reserved copy issued to " + waiting.getName() + ": " + book.getTitle());
+         }
      } else {
          if (user == null) {
              System.out.println("User with ID " + userId + " not found.");
@@ -150,30 +2376,162 @@ class Library {
      }
  }
  
- private User findUserById(String userId) {
-     for (User user : users) {
-         if (user.getUserId().equals(userId)) {
-             return user;
+ public void reserveBook(String userId, String isbn) {
+     User user = findUserById(userId);
+     Book book = findBookByIsbn(isbn);
+     
+     if (user != null && book != null) {
+         if (user.holds(book)) {
+             System.out.println(user.getName() + " already has: " + book.getTitle());
+         } else if (book.reserve(user)) {
+             System.out.println(user.getName() + " successfully borrowed: " + book.getTitle());
+         } else {
+             System.out.println(user.getName() + " reserved: " + book.getTitle() +
+                                " (" + book.getReservationCount() + " in queue)");
+         }
+     } else {
+         if (user == null) {
+             System.out.println("User with ID " + userId + " not found.");
+         }
+         if (book == null) {
+             System.out.println("Book with ISBN " + isbn + " not found.");
          }
      }
-     return null;
+ }
+ 
+ //Quiet reserve: true if a copy was issued at once, false if queued or unknown
+ public boolean tryReserve(String userId, String isbn) {
+     User user = findUserById(userId);
+     Book book = findBookByIsbn(isbn);
+     return user != null && book != null && book.reserve(user);
+ }
+ 
+ public boolean cancelReservation(String userId, String isbn) {
+     User user = findUserById(userId);
+     Book book = findBookByIsbn(isbn);
+     return user != null && book != null && book.cancelReservation(user);
+ }
+ 
+ boolean register(User user) {
+     if (users.putIfAbsent(user.getUserId(), user) != null) {
+         return false;
+     }
+     user.attach(loans);
+     usersInOrder.add(user);
+     if (store != null) {
+         store.userAdded(user);
+     }
+     return true;
+ }
+ 
+ boolean restoreLoan(String userId, String isbn, long borrowedAt, long dueAt) {
+     User user = findUserById(userId);
+     Book book = findBookByIsbn(isbn);
+     return user != null && book != null && user.restoreLoan(book, borrowedAt, dueAt);
+ }
+ 
+ boolean restoreReturn(String userId, String isbn) {
+     User user = findUserById(userId);
+     Book book = findBookByIsbn(isbn);
+     return user != null && book != null && user.restoreReturn(book);
+ }
+ 
+ boolean restoreFine(String userId, long cents) {
+     User user = findUserById(userId);
+     if (user == null) {
+         return false;
+     }
+     user.restoreFine(cents);
+     return true;
+ }
+ 
+ List<Book> loadedBooks() {
+     return new ArrayList<>(books.values());
+ }
+ 
+ List<User> allUsers() {
+     return new ArrayList<>(usersInOrder);
+ }
+ 
+ //Quiet issue and return for concurrent callers: false when the user or
+ //book is unknown, the book is out, or the user does not hold it
+ public boolean tryIssue(String userId, String isbn) {
+     User user = findUserById(userId);
+     Book book = findBookByIsbn(isbn);
+     return user != null && book != null && user.checkout(book);
+ }
+ 
+ public boolean tryReturn(String userId, String isbn) {
+     User user = findUserById(userId);
+     Book book = findBookByIsbn(isbn);
+     return user != null && book != null && user.checkin(book);
+ }
+ 
+ private User findUserById(String userId) {
+     return users.get(userId);
  }
  
  private Book findBookByIsbn(String isbn) {
-     for (Book book : books) {
-         if (book.getIsbn().equals(isbn)) {
-             return book;
+     Book book = books.get(Book.isbnKey(isbn));
+     if (book != null || store == null || fullyLoaded) {
+         return book;
+     }
+     // First use of a stored book: build it from the mapped catalog
+     Book stored = store.read(isbn);
+     if (stored == null) {
+         return null;
+     }
+     insert(stored);
+     return books.get(stored.isbnKey());
+ }
+ 
+ //Materialize every stored book not yet loaded; the listing and search
+ //methods need the whole catalog in memory
+ private void ensureFullyLoaded() {
+     if (fullyLoaded) {
+         return;
+     }
+     synchronized (loadLock) {
+         if (!fullyLoaded) {
+             store.forEachBook(book -> {
+                 if (!books.containsKey(book.isbnKey())) {
+                     insert(book);
+                 }
+             });
+             fullyLoaded = true;
+         }
+     }
+ }
+ 
+ public List<Book> search(String query) {
+     ensureFullyLoaded();
+     return searchIndex.search(query, SEARCH_LIMIT);
+ }
+ 
+ public List<String> autocomplete(String prefix) {
+     ensureFullyLoaded();
+     return searchIndex.autocomplete(prefix, SEARCH_LIMIT);
+ }
+ 
+ public void searchBooks(String query) {
+     System.out.println("\n=== SEARCH RESULTS FOR \"" + query + "\" ===");
+     List<Book> results = search(query);
+     if (results.isEmpty()) {
+         System.out.println("No matching books.");
+     } else {
+         for (Book book : results) {
+             book.displayInfo();
          }
      }
-     return null;
  }
  
  public void displayAllBooks() {
+     ensureFullyLoaded();
      System.out.println("\n=== ALL BOOKS IN LIBRARY ===");
      if (books.isEmpty()) {
          System.out.println("No books in library.");
      } else {
-         for (Book book : books) {
+         for (Book book : availableBooks.all()) {
              book.displayInfo();
          }
      }
@@ -184,53 +2542,635 @@ class Library {
      if (users.isEmpty()) {
          System.out.println("No users registered.");
      } else {
-         for (User user : users) {
+         for (User user : usersInOrder) {
              user.displayInfo();
              System.out.println();
          }
      }
  }
  
+ public int countAvailableBooks() {
+     ensureFullyLoaded();
+     return availableBooks.count();
+ }
+ 
+ public List<Book> getAvailableBooks() {
+     ensureFullyLoaded();
+     return availableBooks.list();
+ }
+ 
+ public List<Loan> getOverdueLoans() {
+     return new ArrayList<>(loans.overdue(System.currentTimeMillis()));
+ }
+ 
+ public int countLoans() {
+     return loans.count();
+ }
+ 
+ public int countOverdueLoans() {
+     return loans.overdueCount();
+ }
+ 
+ //Flag loans that fell due since the last sweep; returns just those
+ public List<Loan> sweepOverdue() {
+     return sweepOverdue(System.currentTimeMillis());
+ }
+ 
+ List<Loan> sweepOverdue(long now) {
+     return loans.sweep(now);
+ }
+ 
+ /**
+  * Sweep for newly overdue loans on a background thread at a fixed period
+  */
+ public synchronized void scheduleOverdueSweeps(long period, TimeUnit unit) {
+     if (overdueSweeps != null) {
+         overdueSweeps.shutdown();
+     }
+     overdueSweeps = Executors.newSingleThreadScheduledExecutor(task -> {
+         Thread thread = new Thread(task, "library-overdue");
+         thread.setDaemon(true);
+         return thread;
+     });
+     overdueSweeps.scheduleAtFixedRate(() -> {
+         List<Loan> expired = sweepOverdue();
+         if (!expired.isEmpty()) {
+             System.out.println("Overdue sweep: " + expired.size() + " loans newly overdue, " +
+                                countOverdueLoans() + " overdue in total");
+         }
+     }, 0, period, unit);
+ }
+ 
+ public CirculationStats getCirculationStats() {
+     return loans.stats();
+ }
+ 
+ public void displayCirculationStats() {
+     System.out.println("\n=== CIRCULATION ===");
+     loans.stats().print(5);
+ }
+ 
+ public long getFinesOwed(String userId) {
+     User user = findUserById(userId);
+     return user == null ? 0 : user.getFinesOwed(System.currentTimeMillis());
+ }
+ 
+ public void displayOverdueLoans() {
+     System.out.println("\n=== OVERDUE LOANS ===");
+     long now = System.currentTimeMillis();
+     List<Loan> overdue = getOverdueLoans();
+     if (overdue.isEmpty()) {
+         System.out.println("No overdue loans.");
+     }
+     for (Loan loan : overdue) {
+         System.out.println(loan.getUser().getName() + " - " + loan.getBook().getTitle() + " (due " + loan.getDueDate() +
+                            ", fine so far " + User.formatCents(loan.fineAt(now)) + ")");
+     }
+ }
+ 
  public void displayAvailableBooks() {
+     ensureFullyLoaded();
      System.out.println("\n=== AVAILABLE BOOKS ===");
-     boolean foundAvailable = false;
-     for (Book book : books) {
-         if (book.isAvailable()) {
-             book.displayInfo();
-             foundAvailable = true;
+     List<Book> available = availableBooks.list();
+     if (available.isEmpty()) {
+         System.out.println("No available books at the moment.");
+     }
+     for (Book book : available) {
+         book.displayInfo();
+     }
+ }
+}
+
+//CheckoutStress Class
+//Hammers one Library from many threads with random issues and returns and
+//proves no copy was ever issued twice: each worker bumps a per-title holder
+//count after a successful issue (and drops it before returning), so more
+//holders than copies is caught the moment it happens. At the end every
+//copy must be either on the shelf or in exactly one user's list.
+class CheckoutStress {
+ private static final int USERS_PER_THREAD = 8;
+ private static final int MAX_LOANS = 4;
+ private static final int COPIES = 2;
+ 
+ static boolean run(int threads, int bookCount, long millis) throws InterruptedException {
+     Library library = new Library();
+     String[] isbns = new String[bookCount];
+     for (int i = 0; i < bookCount; i++) {
+         isbns[i] = "S" + i;
+         library.register(new Book("Stress Title " + i, "Author " + (i % 100), isbns[i], COPIES));
+     }
+     User[] users = new User[threads * USERS_PER_THREAD];
+     for (int i = 0; i < users.length; i++) {
+         users[i] = new User("Stress User " + i, "SU" + i);
+         library.register(users[i]);
+     }
+     
+     AtomicIntegerArray holders = new AtomicIntegerArray(bookCount);
+     LongAdder doubleIssues = new LongAdder();
+     LongAdder operations = new LongAdder();
+     CountDownLatch done = new CountDownLatch(threads);
+     long deadline = System.nanoTime() + millis * 1_000_000L;
+     for (int t = 0; t < threads; t++) {
+         int first = t * USERS_PER_THREAD;
+         Thread worker = new Thread(() -> {
+             ThreadLocalRandom random = ThreadLocalRandom.current();
+             List<List<Integer>> loans = new ArrayList<>();
+             for (int u = 0; u < USERS_PER_THREAD; u++) {
+                 loans.add(new ArrayList<>());
+             }
+             long count = 0;
+             while (System.nanoTime() < deadline) {
+                 int u = random.nextInt(USERS_PER_THREAD);
+                 String userId = users[first + u].getUserId();
+                 List<Integer> held = loans.get(u);
+                 if (held.size() < MAX_LOANS && (held.isEmpty() || random.nextBoolean())) {
+                     int book = random.nextInt(bookCount);
+                     if (library.tryIssue(userId, isbns[book])) {
+                         if (holders.incrementAndGet(book) > COPIES) {
+                             doubleIssues.increment();
+                         }
+                         held.add(book);
+                     }
+                 } else {
+                     int book = held.remove(random.nextInt(held.size()));
+                     holders.decrementAndGet(book);
+                     if (!library.tryReturn(userId, isbns[book])) {
+                         doubleIssues.increment();   // we held it, so the return must succeed
+                     }
+                 }
+                 count++;
+             }
+             operations.add(count);
+             done.countDown();
+         }, "stress-" + t);
+         worker.start();
+     }
+     done.await();
+     
+     // Final consistency: shelf + loans account for every copy exactly once,
+     // and the availability index lists exactly the titles with a free copy
+     int[] seen = new int[bookCount];
+     Book[] titles = new Book[bookCount];
+     int onLoan = 0;
+     for (User user : users) {
+         for (Book book : user.getBorrowedBooks()) {
+             int i = Integer.parseInt(book.getIsbn().substring(1));
+             titles[i] = book;
+             seen[i]++;
+             onLoan++;
          }
      }
-     if (!foundAvailable) {
-         System.out.println("No available books at the moment.");
+     int onShelf = 0;
+     for (Book book : library.getAvailableBooks()) {
+         int i = Integer.parseInt(book.getIsbn().substring(1));
+         titles[i] = book;
+         onShelf++;
+     }
+     int inconsistent = 0;
+     for (int i = 0; i < bookCount; i++) {
+         int free = titles[i] == null ? 0 : titles[i].getAvailableCopies();
+         if (seen[i] + free != COPIES) {
+             inconsistent++;
+         }
      }
+     CirculationStats stats = library.getCirculationStats();
+     boolean passed = doubleIssues.sum() == 0 && inconsistent == 0 && library.countAvailableBooks() == onShelf
+                      && library.countLoans() == onLoan && stats.issues() - stats.returns() == onLoan;
+     
+     System.out.println("\n=== CHECKOUT STRESS TEST ===");
+     System.out.printf("Threads: %d, titles: %,d x %d copies, users: %,d%n", threads, bookCount, COPIES, users.length);
+     System.out.printf("Operations: %,d (%,d ops/sec)%n", operations.sum(), operations.sum() * 1000 / Math.max(1, millis));
+     System.out.printf("Copies on loan: %,d, titles on the shelf: %,d%n", onLoan, onShelf);
+     System.out.println("Double issues: " + doubleIssues.sum() + ", inconsistent books: " + inconsistent);
+     System.out.printf("Recorded issues: %,d, returns: %,d, busiest title: %s%n", stats.issues(), stats.returns(),
+                       stats.topTitles(1).isEmpty() ? "none" : stats.topTitles(1).get(0).getKey().getTitle());
+     System.out.println(passed ? "Stress test PASSED" : "Stress test FAILED");
+     return passed;
  }
 }
 
-//Main Class
-public class LibraryManagementSystem {
- public static void main(String[] args) {
-     // Create library instance
+//OverdueSweepBench Class
+//Lends one copy of each of many titles with due dates spread over a span
+//of days, then steps a simulated clock one day at a time and times each
+//overdue sweep next to a scan of every user's loans. The sweep's cost
+//should follow the loans that fell due that day, not the total on loan.
+class OverdueSweepBench {
+ private static final int LOANS_PER_USER = 20;
+ private static final long DAY = TimeUnit.DAYS.toMillis(1);
+ 
+ static void run(int loanCount, int days) {
      Library library = new Library();
+     User[] users = new User[(loanCount + LOANS_PER_USER - 1) / LOANS_PER_USER];
+     for (int u = 0; u < users.length; u++) {
+         users[u] = new User("Reader " + u, "R" + u);
+         library.register(users[u]);
+     }
+     long start = System.currentTimeMillis();
+     ThreadLocalRandom random = ThreadLocalRandom.current();
+     for (int i = 0; i < loanCount; i++) {
+         String isbn = "B" + i;
+         library.register(new Book("Title " + i, "Author " + (i % 1000), isbn));
+         long dueAt = start + random.nextLong(days * DAY);
+         library.restoreLoan(users[i / LOANS_PER_USER].getUserId(), isbn, dueAt - Loan.LOAN_PERIOD_MILLIS, dueAt);
+     }
+     System.out.println("\n=== OVERDUE SWEEP BENCHMARK ===");
+     System.out.printf("Loans: %,d across %,d users, due over %d days%n", loanCount, users.length, days);
+     
+     long sweepNanos = 0;
+     long scanNanos = 0;
+     int swept = 0;
+     for (int day = 1; day <= days; day++) {
+         long now = start + day * DAY;
+         long t = System.nanoTime();
+         int expired = library.sweepOverdue(now).size();
+         long sweep = System.nanoTime() - t;
+         
+         t = System.nanoTime();
+         int scanned = 0;
+         for (User user : users) {
+             for (Loan loan : user.getLoans()) {
+                 if (loan.getDueAt() < now) {
+                     scanned++;
+                 }
+             }
+         }
+         long scan = System.nanoTime() - t;
+         
+         sweepNanos += sweep;
+         scanNanos += scan;
+         swept += expired;
+         if (scanned != library.countOverdueLoans()) {
+             System.out.println("Day " + day + ": sweep flagged " + library.countOverdueLoans() + " but a scan found " + scanned);
+         }
+         if (day <= 3 || day == days) {
+             System.out.printf("Day %d: %,d newly overdue in %,d us (full scan %,d us), %,d overdue%n",
+                               day, expired, sweep / 1000, scan / 1000, library.countOverdueLoans());
+         }
+     }
+     long fines = 0;
+     for (User user : users) {
+         fines += user.getFinesOwed(start + days * DAY);
+     }
+     System.out.printf("Sweeps: %,d loans flagged, %,d us per day (full scan %,d us per day)%n",
+                       swept, sweepNanos / days / 1000, scanNanos / days / 1000);
+     System.out.println("Fines accrued by the last day: " + User.formatCents(fines));
+ }
+}
+
+//CatalogImporter Class
+//Streaming bulk load of a CSV catalog: isbn,title,author[,copies] per line,
+//fields optionally double-quoted ("" inside quotes is a literal quote; a
+//quoted field cannot span lines). One reader thread cuts the file into
+//batches of lines and a pool of workers parses them. For a persistent
+//library each worker sorts its rows into runs on disk and the runs are
+//merged into the stored catalog at the end, so memory stays flat however
+//large the file is and the new books are only materialized when first
+//looked up. A library kept in memory takes the books straight into its
+//catalog and indexes instead. Books whose ISBN is already in the library
+//(or on an earlier line) are counted and skipped. Nothing is printed or
+//logged per record. Run it while nothing else changes the library.
+class CatalogImporter {
+ private static final int BATCH_SIZE = 4096;
+ private static final int QUEUE_DEPTH = 16;
+ private static final long REPORT_EVERY = 1_000_000;
+ private static final Batch POISON = new Batch(-1, new String[0]);
+ 
+ //Consecutive lines of the file, numbered so the first of several rows
+ //with one ISBN wins whichever worker parses it
+ private static final class Batch {
+     final long firstLine;
+     final String[] lines;
+     
+     Batch(long firstLine, String[] lines) {
+         this.firstLine = firstLine;
+         this.lines = lines;
+     }
+ }
+ 
+ //Totals for one import run
+ static final class Report {
+     long lines;
+     long imported;
+     long duplicates;
+     long malformed;
+     long failed;              // lines whose import threw
+     String firstFailure;
+     long accepted;            // well-formed rows handed to the store, before duplicates are dropped
+     long nanos;
+     
+     void print() {
+         System.out.println("\n" + "=".repeat(50));
+         System.out.println("CATALOG IMPORT SUMMARY");
+         System.out.println("-".repeat(50));
+         System.out.printf("Records:         %,d%n", lines);
+         System.out.printf("Imported:        %,d%n", imported);
+         System.out.printf("Duplicate ISBNs: %,d%n", duplicates);
+         System.out.printf("Malformed:       %,d%n", malformed);
+         if (failed > 0) {
+             System.out.printf("Failed:          %,d (first: %s)%n", failed, firstFailure);
+         }
+         System.out.printf("Elapsed:         %,d ms%n", nanos / 1_000_000);
+         System.out.printf("Rate:            %,d records/sec%n", nanos == 0 ? 0 : lines * 1_000_000_000L / nanos);
+         System.out.println("=".repeat(50));
+     }
+ }
+ 
+ private final Library library;
+ private final int workers;
+ private final AtomicLong processed = new AtomicLong();
+ private volatile IOException ioFailure;     // reading the file or spilling a run; ends the import
+ private long lastReportNanos;
+ private long lastReportCount;
+ 
+ CatalogImporter(Library library, int workers) {
+     this.library = library;
+     this.workers = workers;
+ }
+ 
+ Report importFile(Path file) throws IOException, InterruptedException {
+     try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+         return importFrom(reader);
+     }
+ }
+ 
+ Report importFrom(BufferedReader reader) throws IOException, InterruptedException {
+     long start = System.nanoTime();
+     lastReportNanos = start;
+     ArrayBlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+     Report[] partials = new Report[workers];
+     Thread[] threads = new Thread[workers];
+     for (int w = 0; w < workers; w++) {
+         Report partial = new Report();
+         partials[w] = partial;
+         threads[w] = new Thread(() -> work(queue, partial), "import-worker-" + w);
+         threads[w].start();
+     }
      
-     // Create some books
-     Book book1 = new Book("The Great Gatsby", "F. Scott Fitzgerald", "12345");
-     Book book2 = new Book("To Kill a Mockingbird", "Harper Lee", "12346");
-     Book book3 = new Book("1984", "George Orwell", "12347");
-     Book book4 = new Book("Pride and Prejudice", "Jane Austen", "12348");
+     String[] pending = new String[BATCH_SIZE];
+     int fill = 0;
+     long lineNumber = 0;
+     try {
+         String line = reader.readLine();
+         if (line != null && line.regionMatches(true, 0, "isbn", 0, 4)) {
+             line = reader.readLine();   // header row
+         }
+         for (; line != null; line = reader.readLine()) {
+             if (line.isBlank()) {
+                 continue;
+             }
+             pending[fill++] = line;
+             if (fill == BATCH_SIZE) {
+                 queue.put(new Batch(lineNumber, pending));
+                 lineNumber += fill;
+                 pending = new String[BATCH_SIZE];
+                 fill = 0;
+             }
+         }
+     } catch (IOException e) {
+         ioFailure = e;
+     } finally {
+         if (fill > 0) {
+             queue.put(new Batch(lineNumber, Arrays.copyOf(pending, fill)));
+         }
+         for (int w = 0; w < workers; w++) {
+             queue.put(POISON);
+         }
+         for (Thread thread : threads) {
+             thread.join();
+         }
+     }
      
-     // Add books to library
-     library.addBook(book1);
-     library.addBook(book2);
-     library.addBook(book3);
-     library.addBook(book4);
+     Report total = new Report();
+     for (Report partial : partials) {
+         total.lines += partial.lines;
+         total.imported += partial.imported;
+         total.duplicates += partial.duplicates;
+         total.malformed += partial.malformed;
+         total.failed += partial.failed;
+         if (total.firstFailure == null) {
+             total.firstFailure = partial.firstFailure;
+         }
+         total.accepted += partial.accepted;
+     }
+     if (ioFailure != null) {
+         library.abortImport();
+         throw ioFailure;
+     }
+     if (total.accepted > 0) {
+         total.imported = library.finishImport();
+         total.duplicates = total.accepted - total.imported;
+     }
+     total.nanos = System.nanoTime() - start;
+     return total;
+ }
+ 
+ private void work(ArrayBlockingQueue<Batch> queue, Report report) {
+     String[] fields = new String[4];
+     List<Book> parsed = new ArrayList<>(BATCH_SIZE);
+     CatalogStore.RunBuffer runs = library.newImportBuffer();
+     try {
+         Batch batch;
+         while ((batch = queue.take()) != POISON) {
+             if (ioFailure == null) {
+                 try {
+                     importBatch(batch, fields, parsed, runs, report);
+                 } catch (IOException e) {
+                     // Keep taking batches so the reader never blocks on a full queue
+                     ioFailure = e;
+                 }
+             }
+             report.lines += batch.lines.length;
+             long done = processed.addAndGet(batch.lines.length);
+             if (done / REPORT_EVERY != (done - batch.lines.length) / REPORT_EVERY) {
+                 reportProgress(done);
+             }
+         }
+         if (runs != null && ioFailure == null) {
+             runs.flush();
+         }
+     } catch (IOException e) {
+         ioFailure = e;
+     } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+     }
+ }
+ 
+ //Each line is handled inside its own catch: one that throws is counted
+ //as failed instead of killing the worker, whose queue would then fill
+ //and block the reader for good
+ private void importBatch(Batch batch, String[] fields, List<Book> parsed, CatalogStore.RunBuffer runs,
+                          Report report) throws IOException {
+     for (int i = 0; i < batch.lines.length; i++) {
+         try {
+             int copies = parse(batch.lines[i], fields);
+             if (copies < 0) {
+                 report.malformed++;
+             } else if (runs != null) {
+                 runs.add(fields[0], fields[1], fields[2], copies, batch.firstLine + i);
+                 report.accepted++;
+             } else {
+                 parsed.add(new Book(fields[1], fields[2], fields[0], copies));
+             }
+         } catch (RuntimeException e) {
+             failed(report, e, 1);
+         }
+     }
+     if (runs == null) {
+         try {
+             int imported = library.importBooks(parsed);
+             report.imported += imported;
+             report.duplicates += parsed.size() - imported;
+         } catch (RuntimeException e) {
+             failed(report, e, parsed.size());
+         }
+         parsed.clear();
+     }
+ }
+ 
+ private static void failed(Report report, RuntimeException e, int lines) {
+     report.failed += lines;
+     if (report.firstFailure == null) {
+         report.firstFailure = e.toString();
+     }
+ }
+ 
+ private synchronized void reportProgress(long done) {
+     long now = System.nanoTime();
+     long rate = (done - lastReportCount) * 1_000_000_000L / Math.max(1, now - lastReportNanos);
+     System.out.printf("  ... %,d records imported (%,d records/sec)%n", done, rate);
+     lastReportNanos = now;
+     lastReportCount = done;
+ }
+ 
+ //Split the line into isbn, title and author; the copy count, or -1 if
+ //the line is malformed
+ private static int parse(String line, String[] fields) {
+     int count = split(line, fields);
+     if (count < 3 || fields[0].isEmpty() || fields[1].isEmpty()) {
+         return -1;
+     }
+     for (int i = 0; i < 3; i++) {
+         if (!CatalogStore.fits(fields[i])) {
+             return -1;
+         }
+     }
+     int copies = 1;
+     if (count == 4) {
+         try {
+             copies = Integer.parseInt(fields[3]);
+         } catch (NumberFormatException e) {
+             return -1;
+         }
+         if (copies <= 0 || copies > Book.MAX_COPIES) {
+             return -1;
+         }
+     }
+     return copies;
+ }
+ 
+ //Split one CSV line into at most fields.length trimmed fields; the
+ //field count, or -1 for too many fields or an unterminated quote
+ static int split(String line, String[] fields) {
+     int count = 0;
+     int i = 0;
+     int length = line.length();
+     while (true) {
+         if (count == fields.length) {
+             return -1;
+         }
+         while (i < length && line.charAt(i) == ' ') {
+             i++;
+         }
+         if (i < length && line.charAt(i) == '"') {
+             StringBuilder field = new StringBuilder();
+             i++;
+             while (true) {
+                 int quote = line.indexOf('"', i);
+                 if (quote < 0) {
+                     return -1;
+                 }
+                 field.append(line, i, quote);
+                 i = quote + 1;
+                 if (i < length && line.charAt(i) == '"') {
+                     field.append('"');
+                     i++;
+                 } else {
+                     break;
+                 }
+             }
+             fields[count++] = field.toString();
+             i = line.indexOf(',', i);
+         } else {
+             int comma = line.indexOf(',', i);
+             fields[count++] = line.substring(i, comma < 0 ? length : comma).trim();
+             i = comma;
+         }
+         if (i < 0) {
+             return count;
+         }
+         i++;
+     }
+ }
+}
+
+//Main Class
+public class LibraryManagementSystem {
+ public static void main(String[] args) throws InterruptedException {
+     if (args.length > 0 && args[0].equals("--stress")) {
+         // java LibraryManagementSystem --stress [threads] [titles] [seconds]
+         int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+         int bookCount = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+         long seconds = args.length > 3 ? Long.parseLong(args[3]) : 5;
+         if (!CheckoutStress.run(threads, bookCount, seconds * 1000)) {
+             System.exit(1);
+         }
+         return;
+     }
+     if (args.length > 0 && args[0].equals("--overdue")) {
+         // java LibraryManagementSystem --overdue [loans] [days]
+         int loanCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+         int days = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+         OverdueSweepBench.run(loanCount, days);
+         return;
+     }
+     if (args.length > 1 && args[0].equals("--import")) {
+         // java LibraryManagementSystem --import catalog.csv [workers]
+         int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+         Library library = openLibrary();
+         try {
+             new CatalogImporter(library, workers).importFile(Paths.get(args[1])).print();
+             library.close();
+         } catch (IOException e) {
+             System.out.println("Error: cannot import catalog - " + e.getMessage());
+         }
+         return;
+     }
      
-     // Create some users
-     User user1 = new User("Alice Johnson", "U001");
-     User user2 = new User("Bob Smith", "U002");
+     // Open the library saved under ./library-data
+     Library library = openLibrary();
+     boolean firstRun = library.isEmpty();
      
-     // Add users to library
-     library.addUser(user1);
-     library.addUser(user2);
+     if (firstRun) {
+         // Create some books
+         Book book1 = new Book("The Great Gatsby", "F. Scott Fitzgerald", "12345");
+         Book book2 = new Book("To Kill a Mockingbird", "Harper Lee", "12346");
+         Book book3 = new Book("1984", "George Orwell", "12347");
+         Book book4 = new Book("Pride and Prejudice", "Jane Austen", "12348");
+         
+         // Add books to library
+         library.addBook(book1);
+         library.addBook(book2);
+         library.addBook(book3);
+         library.addBook(book4);
+         
+         // Create some users
+         User user1 = new User("Alice Johnson", "U001");
+         User user2 = new User("Bob Smith", "U002");
+         
+         // Add users to library
+         library.addUser(user1);
+         library.addUser(user2);
+     }
      
      // Display initial state
      library.displayAllBooks();
@@ -260,5 +3200,42 @@ public class LibraryManagementSystem {
      library.displayAllBooks();
      library.displayAllUsers();
      library.displayAvailableBooks();
+     
+     System.out.println("\n=== TESTING COPIES AND RESERVATIONS ===");
+     if (firstRun) {
+         library.addBook(new Book("1984", "George Orwell", "12347", 2));
+     }
+     library.issueBook("U001", "12348");
+     library.reserveBook("U002", "12348");
+     library.returnBook("U001", "12348");
+     library.displayAllUsers();
+     
+     System.out.println("\n=== TESTING OVERDUE LOANS ===");
+     System.out.println("Newly overdue: " + library.sweepOverdue().size() + ", overdue in total: " + library.countOverdueLoans());
+     library.displayOverdueLoans();
+     library.displayCirculationStats();
+     
+     System.out.println("\n=== TESTING SEARCH ===");
+     library.searchBooks("orwell");
+     library.searchBooks("kill mock");
+     System.out.println("Autocomplete \"pr\": " + library.autocomplete("pr"));
+     
+     try {
+         library.close();
+     } catch (IOException e) {
+         System.out.println("Error: cannot save library data - " + e.getMessage());
+     }
+ }
+ 
+ //Saved data that cannot be read stops the program: carrying on with an
+ //empty library would hide it, and the next checkpoint would overwrite it
+ private static Library openLibrary() {
+     try {
+         return Library.open(Paths.get("library-data"));
+     } catch (IOException e) {
+         System.out.println("Error: cannot open library data (" + e.getMessage() + ")");
+         System.exit(1);
+         return null;
+     }
  }
-}
\ No newline at end of file
+}
\ No newline at end of file